@@ -0,0 +1,66 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//=========================================================================
+
+import mouse.runtime.SourceString;
+
+//  Show how time of parsing long lists grows with their length.
+//  Parses input of n lines "a = 1", and a line "a = 1+1+...+1" with n terms,
+//  for n = 125000 and n = 1000000. The time for the longer input should
+//  be about 8 times that for the shorter. Run by target 'longlist'
+//  of build.xml; the times are only reported, not checked.
+
+class LongList
+{
+  public static void main(String argv[])
+    {
+      myParser parser = new myParser();            // Instantiate Parser+Semantics
+      for (int kind=0;kind<2;kind++)
+      {
+        time(parser,kind,125000);                  // Warm up
+        long t1 = time(parser,kind,125000);
+        long t8 = time(parser,kind,1000000);
+        System.out.printf("%s: 125000 in %d ms, 1000000 in %d ms, ratio %.1f%n",
+                          kind==0? "lines" : "terms", t1/1000000, t8/1000000,
+                          (double)t8/Math.max(t1,1));
+      }
+    }
+
+  //-------------------------------------------------------------------
+  //  Time in nanoseconds to parse input of 'kind' with 'n' elements.
+  //-------------------------------------------------------------------
+  static long time(myParser parser, int kind, int n)
+    {
+      StringBuilder sb = new StringBuilder();
+      if (kind==0)
+        for (int i=0;i<n;i++) sb.append("a = 1\n");
+      else
+      {
+        sb.append("a = 1");
+        for (int i=1;i<n;i++) sb.append("+1");
+        sb.append("\n");
+      }
+      SourceString src = new SourceString(sb.toString());
+      long t0 = System.nanoTime();
+      boolean ok = parser.parse(src);              // Apply parser to it
+      long t1 = System.nanoTime();
+      if (!ok) throw new Error("parse failed");
+      return t1-t0;
+    }
+}
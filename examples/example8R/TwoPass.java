@@ -0,0 +1,68 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//=========================================================================
+
+import mouse.runtime.SourceString;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+//  Check that two-pass parsing gives the same output as parsing
+//  in one pass: semantic actions are not repeated, and error messages
+//  are the same. Run by target 'test' of build.xml.
+
+class TwoPass
+{
+  static final String[] lines =
+    {"a = 3", "a*(2+a)", "b = ", "2 2", "1 +", "1 .", "1 - 2 *", "(1 + 2", "x = 1 + y"};
+
+  public static void main(String argv[])
+    {
+      String one = run(false);
+      String two = run(true);
+      System.out.print(two);
+      if (one.equals(two))
+        System.out.println("two-pass: same as one pass");
+      else
+      {
+        System.out.println("two-pass differs from one pass:");
+        System.out.print(one);
+        System.exit(1);
+      }
+    }
+
+  static String run(boolean twoPass)
+    {
+      PrintStream out = System.out;
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(buf,true));
+      try
+      {
+        myParser parser = new myParser();          // Instantiate Parser+Semantics
+        parser.setTwoPass(twoPass);
+        for (String line: lines)
+        {
+          System.out.println("> " + line);
+          parser.parse(new SourceString(line));    // Apply Parser to the line
+        }
+      }
+      finally
+      { System.setOut(out); }
+      return buf.toString();
+    }
+}
@@ -38,6 +38,39 @@
 //    Version 2.3
 //      New code for 'colon' operators in Visitors.
 //      Use 'FuncVV' istead of 'SemAction'.
+//    Version 2.4
+//      Assign ids to diagnostic names of terminals; generate them
+//      as parameters of terminal calls, and the table of names.
+//      Added options -E and -A.
+//      Added option -R.
+//      Select alternatives of Choice and Rule by the next character
+//      ('switch' on 'peek()').
+//      Generate guards that reject on the next character
+//      before creating Phrase, with their CharSets.
+//      Generate CharSets for terminals [s] and [a-z].
+//      Generate repetitions of one-character terminals
+//      as calls to 'nextStar', 'nextPlus', 'nextUntil'.
+//      Generate string literals as char[] constants.
+//      Added option -B.
+//      Added option -C.
+//      Generated 'parse' repeats the parse by 'retry'
+//      after failure in two-pass mode. Semantic actions are called
+//      only if 'semAct' is true, and followed by 'semDone';
+//      results of boolean actions go through 'semAnd'. The second
+//      pass does not repeat the actions, but sets error information
+//      they set in the first.
+//      Procedures are identified in calls to 'begin' and 'saved'
+//      by ids of their names in the table of diagnostic names.
+//      Generate constants 'ID_name' with ids of Rules.
+//      Added option -I.
+//      Generate 'b' in 'a:b' and 'a:!b' that is a choice of string
+//      literals as StringSet constant, looked up instead of parsing 'b'.
+//      Bug fix: procedure for 'a:b' called 'is' with 'ok' of 'a:!b',
+//      and vice-versa.
+//      Generate Choice of string literals, and Rule that is such
+//      Choice, as walk of a Trie constant.
+//      Recognizer procedure that calls 'is' begins with 'beginIs'
+//      or 'savedIs'.
 //
 //=========================================================================
 
@@ -53,7 +86,9 @@ import mouse.utility.Convert;
 import mouse.utility.LineWriter;
 import java.io.File;
 import java.lang.StringBuilder;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.TimeZone;
 import java.util.Vector;
@@ -121,6 +156,40 @@ import java.text.SimpleDateFormat;
 //
 //       (Options -M and -T are mutually exclusive.)
 //
+//    -E Generate parser with terminal elision: terminals consumed
+//       by the parser are kept as spans of text, and Phrase objects
+//       for them are created only when requested by 'rhs(i)'.
+//
+//    -A Generate parser that keeps its parse stack in arrays
+//       (extension of ParserArray). Phrase objects are created only
+//       when requested by semantic actions. Can not be combined
+//       with -M or -T, and not used for grammar with left recursion.
+//
+//    -B Generate parser for input of bytes in UTF-8 (from SourceBytes).
+//       Terminals of the grammar are compiled to bytes: string literals
+//       to their UTF-8 bytes, and ASCII character classes to sets of bytes.
+//       Terminals that can match other characters decode one character
+//       from the bytes. Can not be combined with -T.
+//
+//    -C Generate recognizer (extension of ParserRecognizer, or of
+//       ParserRecognizerMemo with -M). The recognizer only checks
+//       the input and reports the error, if any. It does not create
+//       Phrases and does not call semantic actions; option -S is ignored.
+//       Can not be combined with -A or -T, and not used for grammar
+//       with boolean actions.
+//
+//    -R Generate re-entrant parser. The parser object does not change
+//       while parsing, and can be used by several threads at the same
+//       time. Each call to 'parse' creates its own parse context
+//       with a new semantics object. Can not be combined with -T.
+//
+//    -I Generate subexpressions inline. A subexpression that can be
+//       written as Java expression is parsed in the procedure that
+//       invokes it, instead of a procedure with its own Phrase.
+//       Its failure restores the position and discards what it added
+//       to the right-hand side. Ignored with -M or -T, where results
+//       of subexpressions are saved or counted by their procedures.
+//
 //
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
 
@@ -144,6 +213,12 @@ public class Generate
   static boolean memo;      // Generate memo version?
   static boolean test;      // Generate test version?
   static boolean skel;      // Generate semantics skeleton?
+  static boolean elide;     // Generate terminal elision?
+  static boolean array;     // Generate array-stack version?
+  static boolean reent;     // Generate re-entrant version?
+  static boolean bytes;     // Generate version for input of bytes?
+  static boolean recog;     // Generate recognizer?
+  static boolean inlSubs;   // Generate subexpressions inline?
 
   //-------------------------------------------------------------------
   //  Output writer.
@@ -167,11 +242,20 @@ public class Generate
   //-------------------------------------------------------------------
   static String cache = "";
 
+  //-------------------------------------------------------------------
+  //  Diagnostic names of terminals, as used in error messages,
+  //  and names and diagnostic names of procedures.
+  //  Index in this list is the id generated as parameter
+  //  in calls to terminal methods, 'begin' and 'saved'.
+  //-------------------------------------------------------------------
+  static Vector<String> diagNames = new Vector<String>();
+
   //-------------------------------------------------------------------
   //  Visitors.
   //-------------------------------------------------------------------
   static ProcVisitor procVisitor = new ProcVisitor();
   static InliVisitor inliVisitor = new InliVisitor();
+  static ExprVisitor exprVisitor = new ExprVisitor();
   static TermVisitor termVisitor = new TermVisitor();
   static RecVisitor  recVisitor  = new RecVisitor();
 
@@ -196,7 +280,7 @@ public class Generate
       //---------------------------------------------------------------
       CommandArgs cmd = new CommandArgs
              (argv,         // arguments to parse
-              "MTs",        // options without argument
+              "MTsEARBCI",  // options without argument
               "GPSDpr",     // options with argument
                0,0);        // no positional arguments
       if (cmd.nErrors()>0) return;
@@ -213,6 +297,12 @@ public class Generate
       test = cmd.opt('T');
       memo = cmd.opt('M');
       skel = cmd.opt('s');
+      elide = cmd.opt('E');
+      array = cmd.opt('A');
+      reent = cmd.opt('R');
+      bytes = cmd.opt('B');
+      recog = cmd.opt('C');
+      inlSubs = cmd.opt('I');
 
       if (gramName==null)
       {
@@ -229,6 +319,18 @@ public class Generate
       if (runName==null)
         runName = "mouse.runtime";
 
+      if (recog & semName!=null)
+      {
+        semName = null;
+        System.err.println("Option -S ignored because -C specified.");
+      }
+
+      if (inlSubs & (memo | test))
+      {
+        inlSubs = false;
+        System.err.println("Option -I ignored because -M or -T specified.");
+      }
+
       if (semName==null)
       {
         if (skel)
@@ -261,6 +363,30 @@ public class Generate
         errors = true;
       }
 
+      if (array & (memo | test))
+      {
+        System.err.println("Option -A can not be combined with -M or -T.");
+        errors = true;
+      }
+
+      if (reent & test)
+      {
+        System.err.println("Options -R and -T are mutually exclusive.");
+        errors = true;
+      }
+
+      if (bytes & test)
+      {
+        System.err.println("Options -B and -T are mutually exclusive.");
+        errors = true;
+      }
+
+      if (recog & (array | test))
+      {
+        System.err.println("Option -C can not be combined with -A or -T.");
+        errors = true;
+      }
+
       if (errors) return;
 
       //---------------------------------------------------------------
@@ -271,6 +397,35 @@ public class Generate
       boolean parsed = PEG.parse(src);
       if (!parsed) return;
       PEG.compact();
+      PEG.firstChars();
+      if (bytes)
+        for (Expr expr: PEG.index)
+          expr.firstChars = firstBytes(expr.firstChars);
+
+      if (array && !PEG.recClasses.isEmpty())
+      {
+        System.err.println("Option -A can not be used for grammar with left recursion.");
+        return;
+      }
+
+      //---------------------------------------------------------------
+      //  Recognizer does not call semantic actions: remove them.
+      //  Boolean action decides the result, and can not be removed.
+      //---------------------------------------------------------------
+      if (recog)
+      {
+        for (Expr.Rule rule: PEG.rules)
+          for (int i=0;i<rule.args.length;i++)
+          {
+            if (rule.onSucc[i]!=null && rule.onSucc[i].and)
+            {
+              System.err.println("Option -C can not be used for grammar with boolean actions.");
+              return;
+            }
+            rule.onSucc[i] = null;
+            rule.onFail[i] = null;
+          }
+      }
 
       //---------------------------------------------------------------
       //  Get full path to grammar file, ready to include in comment.
@@ -299,6 +454,13 @@ public class Generate
       //---------------------------------------------------------------
       generateHeader();
 
+      //---------------------------------------------------------------
+      //  Assign ids 0 through n-1 to names of the n Rules.
+      //---------------------------------------------------------------
+      if (!recog)
+        for (Expr.Rule expr: PEG.rules)
+          diagId(expr.name);
+
       //---------------------------------------------------------------
       //  Generate procedures for non-recursive Rules
       //  and their sub-expressions.
@@ -335,8 +497,75 @@ public class Generate
       {
         out.BOX("Caches");
         generateCaches();
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Terminate the parse context of re-entrant version.
+      //---------------------------------------------------------------
+      if (reent)
+      {
+        out.undent();
+        out.line("}");
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Generate character sets used by guards and terminals.
+      //---------------------------------------------------------------
+      if (!charSets.isEmpty())
+      {
+        out.BOX("Character sets");
+        generateCharSets();
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Generate string literals used by terminals.
+      //---------------------------------------------------------------
+      if (!literals.isEmpty())
+      {
+        out.BOX("String literals");
+        generateLiterals();
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Generate string sets used by 'is'.
+      //---------------------------------------------------------------
+      if (!wordSets.isEmpty())
+      {
+        out.BOX("String sets");
+        generateWordSets();
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Generate tries for choices of string literals.
+      //---------------------------------------------------------------
+      if (!tries.isEmpty())
+      {
+        out.BOX("Tries");
+        generateTries();
+        out.line("");
+      }
+
+      //---------------------------------------------------------------
+      //  Generate ids of Rules for use in semantics.
+      //---------------------------------------------------------------
+      if (!recog)
+      {
+        out.BOX("Ids of Rules");
+        generateRuleIds();
+        out.line("");
       }
 
+      //---------------------------------------------------------------
+      //  Generate table of diagnostic names.
+      //---------------------------------------------------------------
+      out.BOX("Diagnostic names");
+      generateDiags();
+
       //---------------------------------------------------------------
       //  Terminate the parser, close output and print statistics.
       //---------------------------------------------------------------
@@ -374,6 +603,8 @@ public class Generate
       String    basePars = runName + ".ParserBase";
       if (memo) basePars = runName + ".ParserMemo";
       if (test) basePars = runName + ".ParserTest";
+      if (array) basePars = runName + ".ParserArray";
+      if (recog) basePars = runName + (memo? ".ParserRecognizerMemo" : ".ParserRecognizer");
 
       out.BOX("This file was generated by Mouse 2.3 at " +
                date + " GMT\nfrom grammar '" + gramPath + "'.");
@@ -387,6 +618,20 @@ public class Generate
 
       out.line("import " + runName + ".Source;");
       out.line("import " + runName + ".FuncVV;");
+      if (!test)
+      {
+        out.line("import " + runName + ".CharSet;");
+        out.line("import " + runName + ".StringSet;");
+        out.line("import " + runName + ".Trie;");
+      }
+      if (reent)
+      {
+        out.line("import " + runName + ".DiagNames;");
+        if (semName!=null)
+          out.line("import java.util.function.Supplier;");
+        generateReentrant(basePars);
+        return;
+      }
       out.line("");
       out.line("public class " + parsName + " extends " + basePars);
       out.line("{");
@@ -413,20 +658,15 @@ public class Generate
       out.line("    super.sem = sem;");
       if (memo | test)
         out.line("    caches = cacheList;");
+      out.line("    setDiags(diagList);");
+      if (elide && !array)
+        out.line("    elide = true;");
       out.line("  }");
       out.line("");
 
       out.box("Run the parser");
       out.line("public boolean parse(Source src)");
-      out.line("  {");
-      out.line("    super.init(src);");
-      if (semName!=null)
-        out.line("    sem.init();");
-      out.line("    boolean result = " + PEG.rules.elementAt(0).name + "();");
-      out.line("    closeParser(result);");
-      out.line("    return result;");
-      out.line("  }");
-      out.line("");
+      generateRun();
 
       if (semName!=null)
       {
@@ -437,6 +677,175 @@ public class Generate
       }
     }
 
+  //=====================================================================
+  //
+  //  Generate header of re-entrant parser.
+  //
+  //-------------------------------------------------------------------
+  //  The parser class keeps only options. Method 'parse' creates
+  //  object of nested class 'Context' that extends 'basePars',
+  //  holds the state of one parse, and contains parsing procedures.
+  //  Generates the beginning of 'Context', to be followed by
+  //  the procedures and caches, and terminated by the caller.
+  //=====================================================================
+  static void generateReentrant(String basePars)
+    {
+      out.line("");
+      out.line("public class " + parsName);
+      out.line("{");
+      out.indent();
+
+      out.BOX("Initialization");
+
+      if (semName!=null)
+      {
+        out.box("Supplier of semantics objects: one for each parse");
+        out.line("final Supplier<" + semName + "> semSupplier;");
+        out.line("");
+      }
+
+      out.box("Options applied to each parse");
+      out.line("volatile String trace = \"\";");
+      out.line("volatile boolean twoPass = false;");
+      if (memo)
+      {
+        out.line("volatile int memo = 0;");
+        out.line("volatile int window = 0;");
+      }
+      out.line("");
+
+      out.box("Constructor");
+      if (semName!=null)
+      {
+        out.line("public " + parsName + "()");
+        out.line("  { this(" + semName + "::new); }");
+        out.line("");
+        out.line("public " + parsName + "(Supplier<" + semName + "> semSupplier)");
+        out.line("  { this.semSupplier = semSupplier; }");
+      }
+      else
+      {
+        out.line("public " + parsName + "()");
+        out.line("  {}");
+      }
+      out.line("");
+
+      out.box("Run the parser. Can be called by several threads at a time.");
+      if (semName!=null)
+      {
+        out.line("public boolean parse(Source src)");
+        out.line("  { return parse(src,semSupplier.get()); }");
+        out.line("");
+        out.box("Run the parser with semantics object 'sem'.");
+        out.line("public boolean parse(Source src, " + semName + " sem)");
+        out.line("  {");
+        out.line("    Context c = new Context(sem);");
+      }
+      else
+      {
+        out.line("public boolean parse(Source src)");
+        out.line("  {");
+        out.line("    Context c = new Context();");
+      }
+      out.line("    c.setTrace(trace);");
+      out.line("    c.setTwoPass(twoPass);");
+      if (memo)
+      {
+        out.line("    c.setMemo(memo);");
+        out.line("    c.setWindow(window);");
+      }
+      out.line("    return c.parse(src);");
+      out.line("  }");
+      out.line("");
+
+      out.box("Set options");
+      out.line("public void setTrace(String trace)");
+      out.line("  { this.trace = trace; }");
+      out.line("");
+      out.line("public void setTwoPass(boolean t)");
+      out.line("  { twoPass = t; }");
+      if (memo)
+      {
+        out.line("");
+        out.line("public void setMemo(int m)");
+        out.line("  {");
+        out.line("    " + runName + ".ParserMemo.checkMemo(m);");
+        out.line("    memo = m;");
+        out.line("  }");
+        out.line("");
+        out.line("public void setWindow(int w)");
+        out.line("  {");
+        out.line("    " + runName + ".ParserMemo.checkWindow(w);");
+        out.line("    window = w;");
+        out.line("  }");
+      }
+      out.line("");
+
+      out.BOX("Parse context");
+      out.line("private static final class Context extends " + basePars);
+      out.line("{");
+      if (semName!=null)
+      {
+        out.line("  " + semName + " sem;");
+        out.line("");
+      }
+      out.indent();
+
+      out.box("Constructor");
+      if (semName!=null)
+      {
+        out.line("Context(" + semName + " sem)");
+        out.line("  {");
+        out.line("    this.sem = sem;");
+        out.line("    sem.rule = this;");
+      }
+      else
+      {
+        out.line("Context()");
+        out.line("  {");
+        out.line("    sem = null;");
+      }
+      out.line("    super.sem = sem;");
+      if (memo)
+        out.line("    caches = cacheList;");
+      out.line("    setDiags(DIAGS);");
+      if (elide && !array)
+        out.line("    elide = true;");
+      out.line("  }");
+      out.line("");
+
+      out.box("Run the parser");
+      out.line("boolean parse(Source src)");
+      generateRun();
+    }
+
+  //=====================================================================
+  //
+  //  Generate body of 'parse'. Except in test version, the parse
+  //  is repeated by 'retry' if it failed in the first pass
+  //  of two-pass mode. Semantics is not initialized again:
+  //  the second pass does not call semantic actions.
+  //
+  //=====================================================================
+  static void generateRun()
+    {
+      String start = PEG.rules.elementAt(0).name + "();";
+      out.line("  {");
+      out.line("    super.init(src);");
+      if (semName!=null)
+        out.line("    sem.init();");
+      out.line("    boolean result = " + start);
+      if (!test)
+      {
+        out.line("    if (!result && retry(src))");
+        out.line("      result = " + start);
+      }
+      out.line("    closeParser(result);");
+      out.line("    return result;");
+      out.line("  }");
+      out.line("");
+    }
+
   //=====================================================================
   //
   //  Generate procedure for non-recursive Rule 'rule'.
@@ -451,10 +860,18 @@ public class Generate
       cache = test? rule.name : "";
       String diag = rule.diagName!=null? ",\"" + Convert.toStringLit(rule.diagName) + "\"" : "";
 
-      if (memo | test)
+      generateGuard(rule);
+      if (recog)
+      {
+        boolean is = rule.args.length==1 && rule.onFail[0]==null && callsIs(rule.args[0]);
+        generateBegin(rule.name,is? "Is" : "",ruleId(rule),memo);
+      }
+      else if (test)
         out.line("if (saved(\"" + rule.name + "\"" + diag + "," + rule.name + ")) return reuse();");
+      else if (memo)
+        out.line("if (saved(" + ids(rule.name,rule.diagName) + "," + rule.name + ")) return reuse();");
       else
-        out.line("begin(\"" + rule.name + "\"" + diag + ");");
+        out.line("begin(" + ids(rule.name,rule.diagName) + ");");
 
       //-------------------------------------------------------------
       //  Special case: single expression on right-hand side
@@ -469,44 +886,49 @@ public class Generate
           out.line("return accept(" + cache + ");");
         else if (act.and)
         {
-          out.line("if (sem." + act.name + "()) return accept(" + cache + ");");
+          out.line("if (semAct()? semAnd(sem." + act.name + "()) : semAnd()) return accept(" + cache + ");");
           out.line("return reject(" + cache + ");");
         }
         else
         {
-          out.line("sem." + act.name + "();");
+          out.line("if (semAct()) sem." + act.name + "();");
+          out.line("semDone();");
           out.line("return accept(" + cache + ");");
         }
       }
 
+      //-------------------------------------------------------------
+      //  Choice of string literals without actions.
+      //-------------------------------------------------------------
+      else if (noActions(rule) && trieCall(rule.args)!=null)
+      {
+        out.line("if (" + trieCall(rule.args) + ") return accept(" + cache + ");");
+        out.line("return reject(" + cache + ");");
+      }
+
       //-------------------------------------------------------------
       //  General case.
       //-------------------------------------------------------------
       else
       {
-        for (int i=0;i<rule.args.length;i++)
+        Vector<Case> cases = cases(rule.args);
+        if (cases==null)
         {
-          Action succ = rule.onSucc[i];
-          Action fail = rule.onFail[i];
-
-          if (succ==null)
-            out.line("if (" + ref(rule.args[i]) + ") return accept(" + cache + ");");
-          else if (succ.and)
-          {
-            out.line("if (" + ref(rule.args[i]) + ")");
-            out.line("{ if (sem." + succ.name + "()) return accept(" + cache + "); }");
-          }
-          else
+          BitSet all = new BitSet();
+          all.set(0,rule.args.length);
+          generateAlts(rule,all);
+        }
+        else
+        {
+          openSwitch();
+          for (Case k: cases)
           {
-            out.line("if (" + ref(rule.args[i]) + ")");
-            out.line("{ sem." + succ.name + "(); return accept(" + cache + "); }");
+            generateLabels(k);
+            generateAlts(rule,k.tried);
+            out.undent();
           }
-
-          if (fail!=null)
-            out.line("sem." + fail.name + "();");
-
+          closeSwitch();
         }
-        out.line("return reject(" + cache + ");");
       }
 
       closeBracket();
@@ -518,6 +940,43 @@ public class Generate
       ruleProcs++;
    }
 
+  //=====================================================================
+  //
+  //  Generate alternatives of 'rule', trying those in 'tried'.
+  //
+  //=====================================================================
+  static void generateAlts(Expr.Rule rule, BitSet tried)
+    {
+      for (int i=0;i<rule.args.length;i++)
+      {
+        Action succ = rule.onSucc[i];
+        Action fail = rule.onFail[i];
+
+        if (!tried.get(i))
+          generateSkip(rule.args[i]);
+        else if (succ==null)
+          out.line("if (" + ref(rule.args[i]) + ") return accept(" + cache + ");");
+        else if (succ.and)
+        {
+          out.line("if (" + ref(rule.args[i]) + ")");
+          out.line("{ if (semAct()? semAnd(sem." + succ.name + "()) : semAnd()) return accept(" + cache + "); }");
+        }
+        else
+        {
+          out.line("if (" + ref(rule.args[i]) + ")");
+          out.line("{ if (semAct()) sem." + succ.name + "(); semDone(); return accept(" + cache + "); }");
+        }
+
+        if (fail!=null)
+        {
+          out.line("if (semAct()) sem." + fail.name + "();");
+          out.line("semDone();");
+        }
+
+      }
+      out.line("return reject(" + cache + ");");
+    }
+
   //=====================================================================
   //
   //  Generate procedure for non-recursive subexpression 'expr'.
@@ -532,13 +991,22 @@ public class Generate
       openBracket();
 
       cache = test? name : "";
-      String diag = expr.isPred? ",\"" + diagPred(expr) + "\"" : "";
+      String diag = expr.isPred? ",\"" + Convert.toStringLit(diagPred(expr)) + "\"" : "";
 
-      if (memo | test)
+      generateGuard(expr);
+      if (recog)
+      {
+        if (expr.isPred) generateBegin(expr.name,"Pred",diagId(diagPred(expr)),memo);
+        else generateBegin(expr.name,callsIs(expr)? "Is" : "",-1,memo);
+      }
+      else if (test)
         out.line("if (saved(\"" + expr.name + "\"" + diag + "," + expr.name + ")) "
                   + (expr.isPred? "return reusePred();" : "return reuseInner();"));
+      else if (memo)
+        out.line("if (saved(" + ids(expr.name,expr.isPred? diagPred(expr) : null) + "," + expr.name + ")) "
+                  + (expr.isPred? "return reusePred();" : "return reuseInner();"));
       else
-        out.line("begin(\"" + expr.name + "\"" + diag + ");");
+        out.line("begin(" + ids(expr.name,expr.isPred? diagPred(expr) : null) + ");");
 
       expr.accept(procVisitor);
       closeBracket();
@@ -565,12 +1033,19 @@ public class Generate
       cache = test? entry.name : "";
       String diag = rule.diagName!=null? ",\"" + Convert.toStringLit(rule.diagName) + "\"" : "";
 
-      if (memo | test)
+      if (recog)
+        generateBegin(entry.name,"",ruleId(rule),memo);
+      else if (test)
         out.line("if (saved(\"" + entry.name + "\"" + diag + "," + entry.name + ")) return reuse();");
+      else if (memo)
+        out.line("if (saved(" + ids(entry.name,rule.diagName) + "," + entry.name + ")) return reuse();");
       else
-        out.line("begin(\"" + entry.name + "\"" + diag + ");");
+        out.line("begin(" + ids(entry.name,rule.diagName) + ");");
 
-      out.line("if ($$"+rc.name+"()) return accept();");
+      if (recog)
+        out.line("if ($$"+rc.name+"(" + diagId(entry.name) + ")) return accept();");
+      else
+        out.line("if ($$"+rc.name+"()) return accept();");
       out.line("return reject("+cache+");");
       closeBracket();
       out.line("");
@@ -588,9 +1063,18 @@ public class Generate
   static void generateCommonEntry(RecClass rc)
     {
       out.Box("Common entry to recursion class " + rc.name);
-      out.line("boolean $$" + rc.name + "()");
-      openBracket();
-      out.line("beginAsc();");
+      if (recog)
+      {
+        out.line("boolean $$" + rc.name + "(int entry)");
+        openBracket();
+        out.line("beginAsc(entry);");
+      }
+      else
+      {
+        out.line("boolean $$" + rc.name + "()");
+        openBracket();
+        out.line("beginAsc();");
+      }
       out.line("boolean ok =");
 
       for (int i=0; i<rc.seeds.size(); i++)
@@ -618,7 +1102,12 @@ public class Generate
       out.Box("Ascent from seed " + comment(seed) + " via " + commentClimb(seed,rc) +".");
       out.line("boolean " + procName + "()");
       openBracket();
-      out.line("begin(\"" + procName + "\",\"" + procName + "\"" + cCache + ");");
+      if (recog)
+        generateBegin(procName,"",diagId(procName),false);
+      else if (test)
+        out.line("begin(\"" + procName + "\",\"" + procName + "\"" + cCache + ");");
+      else
+        out.line("begin(" + ids(procName,null) + ");");
       out.line("if (!" + ref(seed) + ") return reject(" + cache + ");");
       generateClimb(seed,rc,cache);
       out.line("return reject("+cache+");");
@@ -641,16 +1130,24 @@ public class Generate
       RecClass rc = expr.recClass;
 
       out.Box("Ascent from " + comment(expr) + " via " + commentClimb(expr,rc) + ".");
-      out.line("boolean " + procName + "(FuncVV act)");
+      out.line("boolean " + procName + (recog? "()" : "(FuncVV act)"));
       openBracket();
 
       cache = test? procName : "";
       String cCache = test? ("," + procName) : "";
 
-      out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
-      out.line("setAction(act);");
+      if (recog)
+        generateBegin(procName,"",diagId(expr.name),false);
+      else
+      {
+        if (test)
+          out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
+        else
+          out.line("begin(" + ids(procName,expr.name) + ");");
+        out.line("setAction(act);");
+      }
       generateClimb(expr,rc,cache);
-      out.line("return reject("+cache+");");
+      out.line(recog? "return rejectAscent();" : "return reject("+cache+");");
       closeBracket();
       out.line("");
 
@@ -676,7 +1173,12 @@ public class Generate
       cache = test? procName : "";
       String cCache = test? ("," + procName) : "";
 
-      out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
+      if (recog)
+        generateBegin(procName,"",-1,false);
+      else if (test)
+        out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
+      else
+        out.line("begin(" + ids(procName,expr.name) + ");");
       generateClimb(expr,rc,cache);
       out.line("return rejectInner("+cache+");");
       closeBracket();
@@ -704,7 +1206,12 @@ public class Generate
       cache = test? procName : "";
       String cCache = test? ("," + procName) : "";
 
-      out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
+      if (recog)
+        generateBegin(procName,"",-1,false);
+      else if (test)
+        out.line("begin(\"" + procName + "\",\"" + expr.name + "\"" + cCache + ");");
+      else
+        out.line("begin(" + ids(procName,expr.name) + ");");
        for (int i=1;i<expr.args.length;i++)
         out.line("if (!"+ref(expr.args[i])+") return rejectInner("+cache+");");
       generateClimb(expr,rc,cache);
@@ -769,12 +1276,46 @@ public class Generate
       out.line("};");
     }
 
-
-  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //=====================================================================
   //
-  //  Auxiliary methods
+  //  Generate constants with ids of Rules, to be used as arguments
+  //  of 'isA(int)' in semantics. The names contain underscore,
+  //  so they do not collide with names of Rules and their Caches.
   //
-  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //=====================================================================
+  static void generateRuleIds()
+    {
+      for (Expr.Rule rule: PEG.rules)
+        out.line("public static final int ID_" + rule.name + " = " + diagId(rule.name) + ";");
+    }
+
+  //=====================================================================
+  //
+  //  Generate table of diagnostic names of terminals and procedures
+  //
+  //=====================================================================
+  static void generateDiags()
+    {
+      out.line("static final String[] diagList =");
+      out.line("{");
+      out.indent();
+      for (int i=0;i<diagNames.size();i++)
+        out.line("\"" + Convert.toStringLit(diagNames.elementAt(i)) + "\", // " + i);
+      out.undent();
+      out.line("};");
+      if (reent)
+      {
+        out.line("");
+        out.line("static final DiagNames DIAGS = new DiagNames(diagList);");
+      }
+    }
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Auxiliary methods
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
   //=====================================================================
   //
   //  Generate procedures for non-recursive subexpressions.
@@ -815,13 +1356,711 @@ public class Generate
   //=====================================================================
   private static String ref(Expr expr)
     {
-      if (expr instanceof Expr.End) return "aheadNot()";
-      if (expr.isTerm) return "next" + termCall(expr);
+      if (expr instanceof Expr.End) return "aheadNot(" + diagId("end of text") + ")";
+      if (expr.isTerm) return "next" + termCall(expr,false);
+      if (expr instanceof Expr.Choice choice)
+      {
+        String walk = trieCall(choice.args);
+        if (walk!=null) return walk;
+      }
+      if (inlSubs && expr.isSub && expr.recClass==null && !expr.isPred)
+      {
+        String inl = inlined(expr);
+        if (inl!=null) return inl;
+      }
       if (expr.isSub && expr.recClass==null && !subs.contains(expr))
         subs.add(expr);
       return expr.name + "()";
     }
 
+  //=====================================================================
+  //  Option -I: return inlined invocation of subexpression 'expr',
+  //  or null if it can not be written as Java expression.
+  //  Inlined Sequence saves its start by 'beginInl' and backtracks
+  //  by 'endInl' if it fails. Other inlined expressions do not
+  //  need it: they fail without consuming input.
+  //=====================================================================
+  private static String inlined(Expr expr)
+    {
+      String call = exprVisitor.call(expr);
+      if (call==null || !(expr instanceof Expr.Sequence)) return call;
+      return "endInl(beginInl() && " + call + ")";
+    }
+
+  //=====================================================================
+  //  Return invocation 'call' as statement. Inlined Choice
+  //  is an expression in parentheses, that is not a statement.
+  //=====================================================================
+  private static String statement(String call)
+    { return call.startsWith("(")? "if " + call + ";" : call + ";"; }
+
+  //=====================================================================
+  //  Get id of diagnostic name 'name', adding it to the list if new.
+  //=====================================================================
+  private static int diagId(String name)
+    {
+      int id = diagNames.indexOf(name);
+      if (id>=0) return id;
+      diagNames.add(name);
+      return diagNames.size()-1;
+    }
+
+  //=====================================================================
+  //  Get arguments of 'begin' or 'saved' for procedure 'name'
+  //  with diagnostic name 'diag': their ids, or only the id
+  //  of 'name' if 'diag' is null or the same.
+  //=====================================================================
+  private static String ids(String name, String diag)
+    {
+      int n = diagId(name);
+      int d = diag==null? n : diagId(diag);
+      return n==d? "" + n : n + "," + d;
+    }
+
+  //=====================================================================
+  //
+  //  Selection of alternatives by the next character.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  An alternative can be selected by the next character if it
+  //  can not succeed without consuming input, has at most MAX_FIRST
+  //  first characters, and its failure on other input registers
+  //  a fixed list of diagnostic names without executing semantic
+  //  actions (see 'failIds'). Such alternative is tried only if
+  //  the next character is one of its first characters.
+  //  Otherwise its failure is registered by calls to 'skip',
+  //  so that error messages are the same as if it was tried.
+  //  Other alternatives are always tried.
+  //
+  //  The alternatives are generated within 'switch (peek())',
+  //  with one case for each group of characters that select
+  //  the same alternatives, and 'default' for all other input.
+  //  The test version tries all alternatives, to count them.
+  //
+  //=====================================================================
+  static final int MAX_FIRST = 128;
+
+  //-------------------------------------------------------------------
+  //  Case of the switch: its labels and alternatives to try.
+  //-------------------------------------------------------------------
+  static class Case
+  {
+    Vector<String> labels = new Vector<String>();
+    BitSet tried;
+  }
+
+  //-------------------------------------------------------------------
+  //  Return cases of the switch for alternatives 'alts',
+  //  ending with 'default', or null if none can be selected.
+  //-------------------------------------------------------------------
+  static Vector<Case> cases(Expr[] alts)
+    {
+      if (test) return null;
+
+      BitSet always = new BitSet();  // Alternatives always tried
+      BitSet chars = new BitSet();   // Characters that select some
+      for (int i=0;i<alts.length;i++)
+      {
+        Expr alt = alts[i];
+        if (alt.empty
+            || alt.firstChars.cardinality()>MAX_FIRST
+            || failIds(alt)==null)
+          always.set(i);
+        else
+          chars.or(alt.firstChars);
+      }
+      if (always.cardinality()==alts.length) return null;
+
+      Vector<Case> cases = new Vector<Case>();
+      Hashtable<BitSet,Case> found = new Hashtable<BitSet,Case>();
+      for (int c=chars.nextSetBit(0);c>=0;c=chars.nextSetBit(c+1))
+      {
+        BitSet tried = (BitSet)always.clone();
+        for (int i=0;i<alts.length;i++)
+          if (alts[i].firstChars.get(c)) tried.set(i);
+        Case k = found.get(tried);
+        if (k==null)
+        {
+          k = new Case();
+          k.tried = tried;
+          found.put(tried,k);
+          cases.add(k);
+        }
+        k.labels.add("case '" + Convert.toCharLit((char)c) + "':");
+      }
+
+      Case k = new Case();
+      k.tried = always;
+      k.labels.add("default:");
+      cases.add(k);
+      return cases;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return ids of diagnostic names registered by failure of 'expr'
+  //  on input that does not start with one of its first characters,
+  //  or null if they depend on input, or if semantic actions
+  //  may be executed. The result is kept in 'failIds',
+  //  with empty list standing for null.
+  //-------------------------------------------------------------------
+  static Hashtable<Expr,Vector<Integer>> failIds = new Hashtable<Expr,Vector<Integer>>();
+
+  static Vector<Integer> failIds(Expr expr)
+    {
+      Vector<Integer> ids = failIds.get(expr);
+      if (ids==null)
+      {
+        ids = new Vector<Integer>();
+        failIds.put(expr,ids);   // Stops recursion (if any)
+        Vector<Integer> found = findFailIds(expr);
+        if (found!=null) ids.addAll(found);
+      }
+      return ids.isEmpty()? null : ids;
+    }
+
+  private static Vector<Integer> findFailIds(Expr expr)
+    {
+      if (expr.empty || expr.recClass!=null) return null;
+
+      if (expr.isTerm)
+      {
+        Vector<Integer> ids = new Vector<Integer>();
+        ids.add(termId(expr));
+        return ids;
+      }
+
+      if (expr instanceof Expr.Rule rule)
+      {
+        // Failing Rule registers only its own name,
+        // but all alternatives must fail without actions.
+        for (int i=0;i<rule.args.length;i++)
+          if (rule.onFail[i]!=null || failIds(rule.args[i])==null)
+            return null;
+        Vector<Integer> ids = new Vector<Integer>();
+        ids.add(diagId(rule.diagName!=null? rule.diagName : rule.name));
+        return ids;
+      }
+
+      if (expr instanceof Expr.Choice choice)
+      {
+        Vector<Integer> ids = new Vector<Integer>();
+        for (Expr arg: choice.args)
+        {
+          Vector<Integer> a = failIds(arg);
+          if (a==null) return null;
+          for (int id: a)
+            if (!ids.contains(id)) ids.add(id);
+        }
+        return ids;
+      }
+
+      if (expr instanceof Expr.Sequence seq)
+        return failIds(seq.args[0]);
+      if (expr instanceof Expr.Plus plus)
+        return failIds(plus.arg);
+      if (expr instanceof Expr.Is is)
+        return failIds(is.arg1);
+      if (expr instanceof Expr.IsNot isNot)
+        return failIds(isNot.arg1);
+      return null;
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate registration of failure of skipped 'expr'.
+  //-------------------------------------------------------------------
+  private static void generateSkip(Expr expr)
+    {
+      for (int id: failIds(expr))
+        out.line("skip(" + id + ");");
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate start and end of the switch.
+  //  Labels of a case are followed by indent, to be undone
+  //  after the case.
+  //-------------------------------------------------------------------
+  private static void openSwitch()
+    {
+      out.line("switch (peek())");
+      out.line("{");
+      out.indent();
+    }
+
+  private static void generateLabels(Case k)
+    {
+      StringBuilder sb = new StringBuilder();
+      for (String label: k.labels)
+      {
+        if (sb.length()+label.length()>60)
+        {
+          out.line(sb.toString().trim());
+          sb.setLength(0);
+        }
+        sb.append(" " + label);
+      }
+      out.line(sb.toString().trim());
+      out.indent();
+    }
+
+  private static void closeSwitch()
+    {
+      out.undent();
+      out.line("}");
+    }
+
+  //=====================================================================
+  //
+  //  Guards.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  Procedure for expression whose failure can be registered
+  //  without trying it (see 'failIds') starts with a guard.
+  //  If the next character is not one of the first characters,
+  //  the guard registers the failure by calls to 'skip' and returns
+  //  false, without creating Phrase. The first characters are
+  //  generated as static CharSet objects 'set$n', with ranges
+  //  of their characters in 'charSets'.
+  //  The same CharSets are used for terminals [s] and [a-z],
+  //  where they replace search in a String.
+  //  (Not in the test version.)
+  //
+  //=====================================================================
+  static Vector<String> charSets = new Vector<String>();
+
+  private static void generateGuard(Expr expr)
+    {
+      if (test || expr.empty) return;
+      if (expr.firstChars.cardinality()>Character.MAX_VALUE) return;
+      Vector<Integer> ids = failIds(expr);
+      if (ids==null) return;
+
+      String set = charSet(expr.firstChars);
+      if (ids.size()==1)
+      {
+        out.line("if (!peekIn(" + set + ")) return skip(" + ids.elementAt(0) + ");");
+        return;
+      }
+      out.line("if (!peekIn(" + set + "))");
+      out.line("{");
+      out.indent();
+      generateSkip(expr);
+      out.line("return false;");
+      out.undent();
+      out.line("}");
+    }
+
+  //-------------------------------------------------------------------
+  //  Return name of CharSet for 'chars', adding it if new.
+  //-------------------------------------------------------------------
+  private static String charSet(BitSet chars)
+    {
+      StringBuilder sb = new StringBuilder();
+      for (int a=chars.nextSetBit(0);a>=0;a=chars.nextSetBit(a+1))
+      {
+        int z = chars.nextClearBit(a)-1;
+        sb.append((char)a).append((char)z);
+        a = z;
+      }
+      String ranges = sb.toString();
+      int i = charSets.indexOf(ranges);
+      if (i<0)
+      {
+        charSets.add(ranges);
+        i = charSets.size()-1;
+      }
+      return "set$" + i;
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate the CharSets.
+  //-------------------------------------------------------------------
+  static void generateCharSets()
+    {
+      for (int i=0;i<charSets.size();i++)
+        out.line("static final CharSet set$" + i + " = new CharSet(\""
+                 + Convert.toStringLit(charSets.elementAt(i)) + "\");");
+    }
+
+  //=====================================================================
+  //
+  //  String literals.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  Terminal "s" with more than one character is generated
+  //  with static char[] constant 'lit$n', compared with the input
+  //  by 'Source.matches'. The strings are listed in 'literals'.
+  //  (Not in the test version.)
+  //
+  //=====================================================================
+  static Vector<String> literals = new Vector<String>();
+
+  //-------------------------------------------------------------------
+  //  Return name of constant for string 's', adding it if new.
+  //-------------------------------------------------------------------
+  private static String literal(String s)
+    {
+      int i = literals.indexOf(s);
+      if (i<0)
+      {
+        literals.add(s);
+        i = literals.size()-1;
+      }
+      return "lit$" + i;
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate the constants.
+  //-------------------------------------------------------------------
+  static void generateLiterals()
+    {
+      for (int i=0;i<literals.size();i++)
+        out.line("static final char[] lit$" + i + " = \""
+                 + Convert.toStringLit(literals.elementAt(i)) + "\".toCharArray();");
+    }
+
+  //=====================================================================
+  //
+  //  String sets.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  Expression 'b' in 'a:b' and 'a:!b' that is a choice of string
+  //  literals, directly or via Rules without semantic actions,
+  //  is generated as static StringSet constant 'words$n'.
+  //  Instead of parsing 'b', the parser looks up the text consumed
+  //  by 'a' in the set. 'b' consumes the whole text if the text
+  //  is one of the literals, and no earlier literal is its prefix
+  //  (such literal would succeed first, consuming only part
+  //  of the text). Literals with earlier prefix are omitted from
+  //  the set. The sets are listed in 'wordSets'.
+  //  (Not in the test version.)
+  //
+  //=====================================================================
+  static Vector<Vector<String>> wordSets = new Vector<Vector<String>>();
+
+  //-------------------------------------------------------------------
+  //  Return argument 'b' of 'is' for 'expr': name of StringSet
+  //  if 'expr' is a choice of literals, otherwise a lambda.
+  //-------------------------------------------------------------------
+  private static String isArg(Expr expr)
+    {
+      Vector<String> words = new Vector<String>();
+      if (test || !words(expr,words)) return "()->" + ref(expr);
+
+      Vector<String> set = new Vector<String>();
+      for (int i=0;i<words.size();i++)
+      {
+        String w = words.elementAt(i);
+        boolean reached = true;
+        for (int j=0;j<i && reached;j++)
+          if (w.startsWith(words.elementAt(j))) reached = false;
+        if (reached) set.add(w);
+      }
+
+      int i = wordSets.indexOf(set);
+      if (i<0)
+      {
+        wordSets.add(set);
+        i = wordSets.size()-1;
+      }
+      return "words$" + i;
+    }
+
+  //-------------------------------------------------------------------
+  //  If 'expr' is a string literal or a choice of them, directly
+  //  or via Rules without semantic actions, append the literals
+  //  to 'words' in order of alternatives and return true.
+  //  Otherwise return false. With option -B, the literals
+  //  are converted to bytes as by 'utf8'.
+  //-------------------------------------------------------------------
+  private static boolean words(Expr expr, Vector<String> words)
+    {
+      if (expr instanceof Expr.StringLit lit)
+      {
+        words.add(bytes? utf8(lit.s) : lit.s);
+        return true;
+      }
+      if (expr instanceof Expr.Choice choice)
+      {
+        for (Expr arg: choice.args)
+          if (!words(arg,words)) return false;
+        return true;
+      }
+      if (expr instanceof Expr.Rule rule && rule.recClass==null && noActions(rule))
+      {
+        for (Expr arg: rule.args)
+          if (!words(arg,words)) return false;
+        return true;
+      }
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate the constants.
+  //-------------------------------------------------------------------
+  static void generateWordSets()
+    {
+      for (int i=0;i<wordSets.size();i++)
+      {
+        StringBuilder sb = new StringBuilder();
+        for (String w: wordSets.elementAt(i))
+          sb.append(sb.length()==0? "\"" : ",\"").append(Convert.toStringLit(w)).append("\"");
+        out.line("static final StringSet words$" + i + " = new StringSet(" + sb + ");");
+      }
+    }
+
+  //=====================================================================
+  //
+  //  Tries.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  Choice of at least MIN_TRIE string literals is generated
+  //  as call 'next(trie$n)' to a parser method that walks
+  //  static Trie constant 'trie$n' once over the input, instead
+  //  of trying the literals one by one. The method registers
+  //  failures of the alternatives that precede the one that
+  //  succeeded, or of all of them, as they would be registered
+  //  when tried one by one. The Tries are listed in 'tries'
+  //  as their constructor arguments. (Not in the test version.)
+  //
+  //=====================================================================
+  static final int MIN_TRIE = 3;
+  static Vector<String> tries = new Vector<String>();
+
+  //-------------------------------------------------------------------
+  //  Return call to walk Trie for Choice of 'alts',
+  //  or null if they are not MIN_TRIE or more string literals.
+  //-------------------------------------------------------------------
+  private static String trieCall(Expr[] alts)
+    {
+      if (test || alts.length<MIN_TRIE) return null;
+      for (Expr alt: alts)
+        if (!(alt instanceof Expr.StringLit)) return null;
+
+      StringBuilder lits = new StringBuilder();
+      StringBuilder ids = new StringBuilder();
+      for (Expr alt: alts)
+      {
+        String s = ((Expr.StringLit)alt).s;
+        if (bytes) s = utf8(s);
+        lits.append(lits.length()==0? "\"" : ",\"").append(Convert.toStringLit(s)).append("\"");
+        ids.append(ids.length()==0? "" : ",").append(termId(alt));
+      }
+      String args = "new String[]{" + lits + "},new int[]{" + ids + "}";
+
+      int i = tries.indexOf(args);
+      if (i<0)
+      {
+        tries.add(args);
+        i = tries.size()-1;
+      }
+      return "next(trie$" + i + ")";
+    }
+
+  //-------------------------------------------------------------------
+  //  Does 'rule' have no semantic actions?
+  //-------------------------------------------------------------------
+  private static boolean noActions(Expr.Rule rule)
+    {
+      for (int i=0;i<rule.args.length;i++)
+        if (rule.onSucc[i]!=null || rule.onFail[i]!=null) return false;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Generate the constants.
+  //-------------------------------------------------------------------
+  static void generateTries()
+    {
+      for (int i=0;i<tries.size();i++)
+        out.line("static final Trie trie$" + i + " = new Trie(" + tries.elementAt(i) + ");");
+    }
+
+  //=====================================================================
+  //
+  //  Scanned repetitions.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  Repetition x*, x+ or x*+y, where x and y are terminals that
+  //  consume one character, is generated as one call to 'nextStar',
+  //  'nextPlus' or 'nextUntil' that scans the characters in a loop
+  //  and consumes them as one terminal instead of one per character.
+  //  As this changes the right-hand side seen by semantic actions,
+  //  it is done only for repetitions that are not part of a Rule
+  //  with actions: those are listed in 'shown'.
+  //  (Not in the test version.)
+  //
+  //=====================================================================
+  static HashSet<Expr> shown = null;
+
+  //-------------------------------------------------------------------
+  //  Is 'expr' generated as scanned repetition?
+  //-------------------------------------------------------------------
+  private static boolean scanned(Expr expr)
+    {
+      if (test) return false;
+
+      if (expr instanceof Expr.Star star)
+        { if (!oneChar(star.arg)) return false; }
+      else if (expr instanceof Expr.Plus plus)
+        { if (!oneChar(plus.arg)) return false; }
+      else if (expr instanceof Expr.StarPlus starPlus)
+        { if (!oneChar(starPlus.arg1) || !oneChar(starPlus.arg2)) return false; }
+      else return false;
+
+      if (shown==null)
+      {
+        shown = new HashSet<Expr>();
+        for (Expr.Rule rule: PEG.rules)
+          for (int i=0;i<rule.args.length;i++)
+            if (rule.onSucc[i]!=null || rule.onFail[i]!=null)
+            {
+              for (Expr arg: rule.args) show(arg);
+              break;
+            }
+      }
+      return !shown.contains(expr);
+    }
+
+  //-------------------------------------------------------------------
+  //  Add to 'shown' 'expr' and its subexpressions, not entering Rules.
+  //-------------------------------------------------------------------
+  private static void show(Expr expr)
+    {
+      if (expr.isRule || !shown.add(expr)) return;
+      if (expr instanceof Expr.Choice choice)
+        for (Expr arg: choice.args) show(arg);
+      else if (expr instanceof Expr.Sequence seq)
+        for (Expr arg: seq.args) show(arg);
+      else if (expr instanceof Expr.And and) show(and.arg);
+      else if (expr instanceof Expr.Not not) show(not.arg);
+      else if (expr instanceof Expr.Plus plus) show(plus.arg);
+      else if (expr instanceof Expr.Star star) show(star.arg);
+      else if (expr instanceof Expr.Query query) show(query.arg);
+      else if (expr instanceof Expr.PlusPlus pp)
+        { show(pp.arg1); show(pp.arg2); }
+      else if (expr instanceof Expr.StarPlus sp)
+        { show(sp.arg1); show(sp.arg2); }
+      else if (expr instanceof Expr.Is is)
+        { show(is.arg1); show(is.arg2); }
+      else if (expr instanceof Expr.IsNot isNot)
+        { show(isNot.arg1); show(isNot.arg2); }
+    }
+
+  //-------------------------------------------------------------------
+  //  Is 'expr' a terminal that consumes one character?
+  //-------------------------------------------------------------------
+  private static boolean oneChar(Expr expr)
+    {
+      if (bytes) return oneByte(expr);
+      if (expr instanceof Expr.StringLit lit) return lit.s.length()==1;
+      return expr instanceof Expr.CharClass
+          || expr instanceof Expr.Range
+          || expr instanceof Expr.Any;
+    }
+
+  //-------------------------------------------------------------------
+  //  Call to scan repetition 'expr'.
+  //  (The set of characters consumed by a one-character terminal
+  //  is the set of its first characters.)
+  //-------------------------------------------------------------------
+  private static String scanCall(Expr expr)
+    {
+      if (expr instanceof Expr.Star star)
+        return "nextStar(" + charSet(star.arg.firstChars) + "," + termId(star.arg) + ")";
+      if (expr instanceof Expr.Plus plus)
+        return "nextPlus(" + charSet(plus.arg.firstChars) + "," + termId(plus.arg) + ")";
+      Expr.StarPlus sp = (Expr.StarPlus)expr;
+      return "nextUntil(" + charSet(sp.arg1.firstChars) + "," + termId(sp.arg1) + ","
+                          + charSet(sp.arg2.firstChars) + "," + termId(sp.arg2) + ")";
+    }
+
+  //=====================================================================
+  //
+  //  Input of bytes.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  With option -B, the parser reads bytes of UTF-8 text presented
+  //  as characters 0-255. String literals are generated as strings
+  //  of their bytes. Terminals [s], [a-z] and 'c' with characters
+  //  in ASCII consume one byte, as before. Terminals _, ^[s], ^'c',
+  //  and [s], [a-z] with other characters consume one UTF-8 character,
+  //  by methods 'Utf8...' that decode it. First characters of
+  //  expressions are replaced by their first bytes.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Return first bytes of UTF-8 encoding of 'chars'.
+  //  A surrogate stands for any character beyond U+FFFF.
+  //-------------------------------------------------------------------
+  static BitSet firstBytes(BitSet chars)
+    {
+      BitSet first = new BitSet();
+      for (int c=chars.nextSetBit(0);c>=0;c=chars.nextSetBit(c+1))
+      {
+        if (c<0x80)
+          first.set(c);
+        else if (c<0x800)
+        {
+          first.set(0xc0 | c>>6);
+          c |= 0x3f;                   // Skip to next first byte
+        }
+        else if (c>=0xd800 && c<=0xdfff)
+        {
+          first.set(0xf0,0xf5);
+          c = 0xdfff;
+        }
+        else
+        {
+          first.set(0xe0 | c>>12);
+          c = (c>=0xd000 && c<0xd800)? 0xd7ff : c|0xfff;
+        }
+      }
+      return first;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return bytes of UTF-8 encoding of 's', as characters.
+  //-------------------------------------------------------------------
+  static String utf8(String s)
+    {
+      byte[] b = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+      StringBuilder sb = new StringBuilder();
+      for (int i=0;i<b.length;i++)
+        sb.append((char)(b[i]&0xff));
+      return sb.toString();
+    }
+
+  //-------------------------------------------------------------------
+  //  Is 'expr' a terminal that consumes one byte?
+  //-------------------------------------------------------------------
+  private static boolean oneByte(Expr expr)
+    {
+      if (expr instanceof Expr.StringLit lit)
+        return lit.s.length()==1 && lit.s.charAt(0)<0x80;
+      if (expr instanceof Expr.CharClass cc)
+        return !cc.hat && ascii(cc.s);
+      if (expr instanceof Expr.Range range)
+        return range.z<0x80;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Are all characters of 's' in ASCII?
+  //-------------------------------------------------------------------
+  private static boolean ascii(String s)
+    {
+      for (int i=0;i<s.length();i++)
+        if (s.charAt(i)>=0x80) return false;
+      return true;
+    }
+
   //=====================================================================
   //  Generate cache.
   //=====================================================================
@@ -842,6 +2081,34 @@ public class Generate
       out.line("");
     }
 
+  //=====================================================================
+  //  Generate start of recognizer procedure 'name' of kind 'kind'
+  //  ("", "Pred", or "Is" for procedure that calls 'is')
+  //  with diagnostic name 'e' (-1 for Inner).
+  //  If 'saved', start by reusing result saved in the cache.
+  //=====================================================================
+  private static void generateBegin(String name, String kind, int e, boolean saved)
+    {
+      String diag = e<0? "" : "" + e;
+      if (saved)
+        out.line("if (saved" + kind + "(" + name + (e<0? "" : ",") + diag + ")) return reuse();");
+      else
+        out.line("begin" + kind + "(" + diag + ");");
+    }
+
+  //=====================================================================
+  //  Does procedure for 'expr' call 'is' itself? That is, is 'expr'
+  //  'a:b' or 'a:!b', or Sequence generated inline with such element.
+  //=====================================================================
+  private static boolean callsIs(Expr expr)
+    {
+      if (expr instanceof Expr.Is || expr instanceof Expr.IsNot) return true;
+      if (expr instanceof Expr.Sequence seq)
+        for (Expr e: seq.args)
+          if (callsIs(e)) return true;
+      return false;
+    }
+
   //=====================================================================
   //  Common for left-recursion procedures.
   //=====================================================================
@@ -858,7 +2125,8 @@ public class Generate
           Expr.Rule rule = (Expr.Rule)prev;
           int i = alt(rule,expr);
           String act;
-          if (rule.onSucc[i]==null) act = "empty$$";
+          if (recog) act = "";
+          else if (rule.onSucc[i]==null) act = "empty$$";
           else act = "()->sem." + rule.onSucc[i].name + "()";
 
           out.line("if ($" + prev.name + "("+act+")) return accept("+cache+");");
@@ -867,7 +2135,12 @@ public class Generate
           out.line("if ($" + prev.name + "()) return accept("+cache+");");
       }
       if (rc.entries.contains(expr))
-        out.line("if (endGrow()) return accept("+cache+");");
+      {
+        if (recog)
+          out.line("if (endGrow(" + diagId(expr.name) + ")) return accept();");
+        else
+          out.line("if (endGrow()) return accept("+cache+");");
+      }
     }
 
   //---------------------------------------------------------------
@@ -909,7 +2182,7 @@ public class Generate
     }
 
   //-------------------------------------------------------------------
-  //  Get diagnostic string for a Predicate
+  //  Get diagnostic name of a Predicate
   //-------------------------------------------------------------------
   static String diagPred(Expr expr)
   {
@@ -922,7 +2195,7 @@ public class Generate
         return diagName(rule);
       }
       else
-        return Convert.toStringLit(arg.asString);
+        return arg.asString;
     }
 
     else if (expr instanceof Expr.Not not)
@@ -936,21 +2209,27 @@ public class Generate
       else if (arg instanceof Expr.Any)
         return "end of text";
       else
-        return "not " + Convert.toStringLit(arg.asString);
+        return "not " + arg.asString;
     }
 
     else throw new Error("SNOC");
   }
 
   //-------------------------------------------------------------------
-  //  Get diagnostic name of a Rule - used only in 'diagPred' above.
+  //  Get diagnostic name of a Rule.
   //-------------------------------------------------------------------
   static String diagName(Expr.Rule rule)
     {
       if (rule.diagName==null) return rule.name;
-      else return Convert.toStringLit(rule.diagName);
+      else return rule.diagName;
     }
 
+  //-------------------------------------------------------------------
+  //  Get id of diagnostic name of a Rule.
+  //-------------------------------------------------------------------
+  static int ruleId(Expr.Rule rule)
+    { return diagId(diagName(rule)); }
+
   //=====================================================================
   //  Writer shortcuts.
   //=====================================================================
@@ -1090,9 +2369,31 @@ public class Generate
 
     public void visit(Expr.Choice expr)
       {
-        for (Expr e: expr.args)
-          out.line("if (" + ref(e) + ") return acceptInner(" + cache + ");");
-        out.line("return rejectInner(" + cache + ");");
+        Vector<Case> cases = cases(expr.args);
+        if (cases==null)
+        {
+          for (Expr e: expr.args)
+            out.line("if (" + ref(e) + ") return acceptInner(" + cache + ");");
+          out.line("return rejectInner(" + cache + ");");
+          return;
+        }
+
+        openSwitch();
+        for (Case k: cases)
+        {
+          generateLabels(k);
+          for (int i=0;i<expr.args.length;i++)
+          {
+            Expr e = expr.args[i];
+            if (k.tried.get(i))
+              out.line("if (" + ref(e) + ") return acceptInner(" + cache + ");");
+            else
+              generateSkip(e);
+          }
+          out.line("return rejectInner(" + cache + ");");
+          out.undent();
+        }
+        closeSwitch();
       }
 
     public void visit(Expr.Sequence expr)
@@ -1116,20 +2417,28 @@ public class Generate
 
     public void visit(Expr.Plus expr)
       {
-        out.line("if (!" + ref(expr.arg) + ") return rejectInner(" + cache + ");");
-        out.line("while (" + ref(expr.arg) + ");");
+        if (scanned(expr))
+          out.line("if (!" + scanCall(expr) + ") return rejectInner(" + cache + ");");
+        else
+        {
+          out.line("if (!" + ref(expr.arg) + ") return rejectInner(" + cache + ");");
+          out.line("while (" + ref(expr.arg) + ");");
+        }
         out.line("return acceptInner(" + cache + ");");
       }
 
     public void visit(Expr.Star expr)
       {
-        out.line("while (" + ref(expr.arg) + ");");
+        if (scanned(expr))
+          out.line(scanCall(expr) + ";");
+        else
+          out.line("while (" + ref(expr.arg) + ");");
         out.line("return acceptInner(" + cache + ");");
       }
 
     public void visit(Expr.Query expr)
       {
-        out.line(ref(expr.arg) + ";");
+        out.line(statement(ref(expr.arg)));
         out.line("return acceptInner(" + cache + ");");
       }
 
@@ -1143,20 +2452,25 @@ public class Generate
 
     public void visit(Expr.StarPlus expr)
       {
-        out.line("while (!" + ref(expr.arg2) + ")");
-        out.line("  if (!" + ref(expr.arg1) + ") return rejectInner(" + cache + ");");
+        if (scanned(expr))
+          out.line("if (!" + scanCall(expr) + ") return rejectInner(" + cache + ");");
+        else
+        {
+          out.line("while (!" + ref(expr.arg2) + ")");
+          out.line("  if (!" + ref(expr.arg1) + ") return rejectInner(" + cache + ");");
+        }
         out.line("return acceptInner(" + cache + ");");
       }
 
     public void visit(Expr.Is expr)
       {
-        out.line("if (!is(false,()->" + ref(expr.arg1) + ",()->" + ref(expr.arg2) + ")) return rejectInner(" + cache + ");");
+        out.line("if (!is(true,()->" + ref(expr.arg1) + "," + isArg(expr.arg2) + ")) return rejectInner(" + cache + ");");
         out.line("return acceptInner(" + cache + ");");
       }
 
     public void visit(Expr.IsNot expr)
       {
-        out.line("if (!is(true,()->" + ref(expr.arg1) + ",()->" + ref(expr.arg2) + ")) return rejectInner(" + cache + ");");
+        out.line("if (!is(false,()->" + ref(expr.arg1) + "," + isArg(expr.arg2) + ")) return rejectInner(" + cache + ");");
         out.line("return acceptInner(" + cache + ");");
       }
 
@@ -1215,14 +2529,60 @@ public class Generate
 
     public void visit(Expr.Choice expr)
       {
-        Expr arg = expr.args[0];
-        out.line("if (!" + ref(arg));
-        for (int i=1;i<expr.args.length;i++)
+        String walk = trieCall(expr.args);
+        if (walk!=null)
+        {
+          out.line("if (!" + walk + ") return " + reject + ";");
+          return;
+        }
+
+        Vector<Case> cases = cases(expr.args);
+        if (cases==null)
         {
-          arg = expr.args[i];
-          out.line(" && !" + ref(arg));
+          Expr arg = expr.args[0];
+          out.line("if (!" + ref(arg));
+          for (int i=1;i<expr.args.length;i++)
+          {
+            arg = expr.args[i];
+            out.line(" && !" + ref(arg));
+          }
+          out.line("   ) return " + reject + ";");
+          return;
         }
-        out.line("   ) return " + reject + ";");
+
+        openSwitch();
+        for (Case k: cases)
+        {
+          generateLabels(k);
+          if (k.tried.isEmpty())
+          {
+            for (Expr arg: expr.args)
+              generateSkip(arg);
+            out.line("return " + reject + ";");
+          }
+          else
+          {
+            String and = "if (";
+            for (int i=0;i<expr.args.length;i++)
+            {
+              Expr arg = expr.args[i];
+              if (k.tried.get(i))
+              {
+                out.line(and + "!" + ref(arg));
+                and = " && ";
+              }
+              else for (int id: failIds(arg))
+              {
+                out.line(and + "!skip(" + id + ")");
+                and = " && ";
+              }
+            }
+            out.line("   ) return " + reject + ";");
+            out.line("break;");
+          }
+          out.undent();
+        }
+        closeSwitch();
       }
 
     public void visit(Expr.Sequence expr)
@@ -1235,7 +2595,7 @@ public class Generate
       {
         Expr arg = expr.arg;
         if (arg.isTerm)
-          out.line("if (!ahead" + termCall(arg) + ") return " + reject + ";");
+          out.line("if (!ahead" + termCall(arg,false) + ") return " + reject + ";");
         else
           out.line("if (!" + ref(expr) + ") return " + reject + ";");
       }
@@ -1244,22 +2604,32 @@ public class Generate
       {
         Expr arg = expr.arg;
         if (arg.isTerm)
-          out.line("if (!aheadNot" + termCall(arg) + ") return " + reject + ";");
+          out.line("if (!aheadNot" + termCall(arg,true) + ") return " + reject + ";");
         else
           out.line("if (!" + ref(expr) + ") return " + reject + ";");
       }
 
     public void visit(Expr.Plus expr)
       {
-        out.line("if (!" + ref(expr.arg) + ") return " + reject + ";");
-        out.line("while (" + ref(expr.arg) + ");");
+        if (scanned(expr))
+          out.line("if (!" + scanCall(expr) + ") return " + reject + ";");
+        else
+        {
+          out.line("if (!" + ref(expr.arg) + ") return " + reject + ";");
+          out.line("while (" + ref(expr.arg) + ");");
+        }
       }
 
     public void visit(Expr.Star expr)
-      { out.line("while (" + ref(expr.arg) + ");"); }
+      {
+        if (scanned(expr))
+          out.line(scanCall(expr) + ";");
+        else
+          out.line("while (" + ref(expr.arg) + ");");
+      }
 
     public void visit(Expr.Query expr)
-      { out.line(ref(expr.arg) + ";"); }
+      { out.line(statement(ref(expr.arg))); }
 
     public void visit(Expr.PlusPlus expr)
       {
@@ -1270,18 +2640,23 @@ public class Generate
 
     public void visit(Expr.StarPlus expr)
       {
-        out.line("while (!" + ref(expr.arg2) + ")");
-        out.line("  if (!" + ref(expr.arg1) + ") return " + reject + ";");
+        if (scanned(expr))
+          out.line("if (!" + scanCall(expr) + ") return " + reject + ";");
+        else
+        {
+          out.line("while (!" + ref(expr.arg2) + ")");
+          out.line("  if (!" + ref(expr.arg1) + ") return " + reject + ";");
+        }
       }
 
     public void visit(Expr.Is expr)
       {
-        out.line("if (!is(true,()->" + ref(expr.arg1) + ",()->" + ref(expr.arg2) + ")) return " + reject + ";");
+        out.line("if (!is(true,()->" + ref(expr.arg1) + "," + isArg(expr.arg2) + ")) return " + reject + ";");
       }
 
     public void visit(Expr.IsNot expr)
       {
-        out.line("if (!is(false,()->" + ref(expr.arg1) + ",()->" + ref(expr.arg2) + ")) return " + reject + ";");
+        out.line("if (!is(false,()->" + ref(expr.arg1) + "," + isArg(expr.arg2) + ")) return " + reject + ";");
       }
 
     public void visit(Expr.Ref expr)
@@ -1307,6 +2682,109 @@ public class Generate
   }
 
 
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  ExprVisitor - visitor to generate expression as Java expression
+  //  that returns true on success and false on failure (option -I).
+  //  The result is null if the expression needs statements.
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+  static class ExprVisitor extends mouse.peg.Visitor
+  {
+    //-----------------------------------------------------------------
+    //  Result from Visitor
+    //-----------------------------------------------------------------
+    String result;
+
+    String call(Expr expr)
+      {
+        result = null;
+        expr.accept(this);
+        return result;
+      }
+
+    public void visit(Expr.Rule expr)
+      { result = expr.name + "()"; }
+
+    public void visit(Expr.Choice expr)
+      {
+        result = trieCall(expr.args);
+        if (result!=null) return;
+        if (cases(expr.args)!=null) return;
+        StringBuilder sb = new StringBuilder("(" + ref(expr.args[0]));
+        for (int i=1;i<expr.args.length;i++)
+          sb.append(" || ").append(ref(expr.args[i]));
+        result = sb.append(")").toString();
+      }
+
+    public void visit(Expr.Sequence expr)
+      {
+        StringBuilder sb = new StringBuilder();
+        for (Expr arg: expr.args)
+        {
+          String s = call(arg);
+          if (s==null)
+          {
+            result = null;
+            return;
+          }
+          if (sb.length()>0) sb.append(" && ");
+          sb.append(s);
+        }
+        result = sb.toString();
+      }
+
+    public void visit(Expr.And expr)
+      {
+        Expr arg = expr.arg;
+        if (arg.isTerm)
+          result = "ahead" + termCall(arg,false);
+        else
+          result = ref(expr);
+      }
+
+    public void visit(Expr.Not expr)
+      {
+        Expr arg = expr.arg;
+        if (arg.isTerm)
+          result = "aheadNot" + termCall(arg,true);
+        else
+          result = ref(expr);
+      }
+
+    public void visit(Expr.Plus expr)
+      { if (scanned(expr)) result = scanCall(expr); }
+
+    public void visit(Expr.Star expr)
+      { if (scanned(expr)) result = scanCall(expr); }
+
+    public void visit(Expr.Query expr)
+      { result = "(" + ref(expr.arg) + " || true)"; }
+
+    public void visit(Expr.StarPlus expr)
+      { if (scanned(expr)) result = scanCall(expr); }
+
+    public void visit(Expr.Ref expr)
+      { throw new Error("Should not occur"); }
+
+    public void visit(Expr.StringLit expr)
+      { result = ref(expr); }
+
+    public void visit(Expr.CharClass expr)
+      { result = ref(expr); }
+
+    public void visit(Expr.Range expr)
+      { result = ref(expr); }
+
+    public void visit(Expr.Any expr)
+      { result = ref(expr); }
+
+    public void visit(Expr.End expr)
+      { result = ref(expr); }
+  }
+
+
   //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
   //
   //  TermVisitor
@@ -1314,15 +2792,25 @@ public class Generate
   //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
   //-------------------------------------------------------------------
   //  This procedure returns kernel of a call to terminal processing.
+  //  Parameter 'not' is true if the call is for "aheadNot".
   //-------------------------------------------------------------------
-  static String termCall(Expr expr)
+  static String termCall(Expr expr, boolean not)
     {
-      termVisitor.cache = test? (expr.name) : "";
+      termVisitor.not = not;
       termVisitor.ccache = test? ("," + expr.name) : "";
       expr.accept(termVisitor);
       return termVisitor.result;
     }
 
+  //-------------------------------------------------------------------
+  //  This procedure returns id of diagnostic name of terminal 'expr'.
+  //-------------------------------------------------------------------
+  static int termId(Expr expr)
+    {
+      termCall(expr,false);
+      return termVisitor.id;
+    }
+
   static class TermVisitor extends mouse.peg.Visitor
   {
     //-----------------------------------------------------------------
@@ -1331,38 +2819,73 @@ public class Generate
     String result;
 
     //-----------------------------------------------------------------
-    //  Input to Visitor: references to cache
+    //  Input to Visitor: is the call for "aheadNot",
+    //  and reference to cache
     //-----------------------------------------------------------------
-    String cache;
+    boolean not;
     String ccache;
 
+    //-----------------------------------------------------------------
+    //  Output from Visitor: id of the diagnostic name.
+    //-----------------------------------------------------------------
+    int id;
+
     public void visit(Expr.StringLit expr)
       {
         String cLit = Convert.toCharLit(expr.s.charAt(0));
         String sLit = Convert.toStringLit(expr.s);
-        if (expr.s.length()==1)
-          result = "('" + cLit + "'" + ccache + ")";
+        String diag = diag("'" + expr.s + "'",not);
+        if (bytes && !ascii(expr.s))
+          result = "(" + literal(utf8(expr.s)) + diag + ")";
+        else if (expr.s.length()==1)
+          result = "('" + cLit + "'" + diag + ccache + ")";
+        else if (test)
+          result = "(\"" + sLit + "\"" + diag + ccache + ")";
         else
-          result = "(\"" + sLit + "\"" + ccache + ")";
+          result = "(" + literal(expr.s) + diag + ")";
       }
 
     public void visit(Expr.CharClass expr)
       {
         String cLit = Convert.toCharLit(expr.s.charAt(0));
         String sLit = Convert.toStringLit(expr.s);
-        if (expr.s.length()==1)
+        if (bytes && (expr.hat || !ascii(expr.s)))
+        {
+          String name = expr.s.length()==1? "'" + expr.s + "'" : "[" + expr.s + "]";
+          String diag = diag(name,not^expr.hat);
+          BitSet chars = new BitSet();
+          for (int i=0;i<expr.s.length();i++)
+            chars.set(expr.s.charAt(i));
+          if (expr.hat)
+            result = "Utf8NotIn(" + charSet(chars) + diag + ")";
+          else if (expr.s.length()==1)
+            result = "(" + literal(utf8(expr.s)) + diag + ")";
+          else
+            result = "Utf8In(" + charSet(chars) + diag + ")";
+        }
+        else if (expr.s.length()==1)
         {
+          String diag = diag("'" + expr.s + "'",not^expr.hat);
           if (expr.hat)
-            result = "Not(\'" + cLit + "\'" + ccache + ")";
+            result = "Not(\'" + cLit + "\'" + diag + ccache + ")";
           else
-           result = "(\'" + cLit + "\'" + ccache + ")";
+           result = "(\'" + cLit + "\'" + diag + ccache + ")";
         }
         else
         {
+          String diag = diag("[" + expr.s + "]",not^expr.hat);
+          String set = "\"" + sLit + "\"";
+          if (!test)
+          {
+            BitSet chars = new BitSet();
+            for (int i=0;i<expr.s.length();i++)
+              chars.set(expr.s.charAt(i));
+            set = charSet(chars);
+          }
           if (expr.hat)
-            result = "NotIn(\"" + sLit + "\"" + ccache + ")";
+            result = "NotIn(" + set + diag + ccache + ")";
           else
-            result = "In(\"" + sLit + "\"" + ccache + ")";
+            result = "In(" + set + diag + ccache + ")";
         }
       }
 
@@ -1370,14 +2893,41 @@ public class Generate
       {
         String aLit = Convert.toCharLit(expr.a);
         String zLit = Convert.toCharLit(expr.z);
-        result = "In('"+ aLit + "','" + zLit + "'" + ccache + ")";
+        String diag = diag("[" + expr.a + "-" + expr.z + "]",not);
+        if (test)
+          result = "In('"+ aLit + "','" + zLit + "'" + diag + ccache + ")";
+        else
+        {
+          BitSet chars = new BitSet();
+          if (expr.a<=expr.z) chars.set(expr.a,expr.z+1);
+          if (bytes && expr.z>=0x80)
+            result = "Utf8In(" + charSet(chars) + diag + ")";
+          else
+            result = "In(" + charSet(chars) + diag + ")";
+        }
       }
 
     public void visit(Expr.Any expr)
-      { result = "(" + cache + ")"; }
+      {
+        id = diagId(not? "end of text" : "any character");
+        if (bytes)
+          result = "Utf8(" + id + ")";
+        else
+          result = "(" + id + ccache + ")";
+      }
 
     public void visit(Expr.End expr)
       { throw new Error("should not be called for " + expr.name); }
+
+    //-----------------------------------------------------------------
+    //  Parameter with id of diagnostic name 'name',
+    //  or of "not 'name'" if 'not' is true.
+    //-----------------------------------------------------------------
+    private String diag(String name, boolean not)
+      {
+        id = diagId(not? "not " + name : name);
+        return "," + id;
+      }
   }
 
 
@@ -1422,4 +2972,4 @@ public class Generate
     private void snoc()
       { throw new Error("Should not occur"); }
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -31,6 +31,10 @@
 //    Version 2.3
 //      'Defered' and 'SemAction' replaced by 'FuncVV'.
 //      Added 'FuncVB'.
+//    Version 2.4
+//      Added 'DiagNames', 'ParserArray', 'CharSet', 'SourceArray',
+//      'SourceMapped', 'SourceBytes', 'LineIndex', 'ParserRecognizer',
+//      'ParserRecognizerMemo', 'StringSet' and 'Trie'.
 //
 //=========================================================================
 
@@ -116,17 +120,28 @@ public class MakeRuntime
       //---------------------------------------------------------------
       //  Write files.
       //---------------------------------------------------------------
+      write("CharSet.java");
       write("CurrentRule.java");
+      write("DiagNames.java");
       write("FuncVV.java");
       write("FuncVB.java");
+      write("LineIndex.java");
+      write("ParserArray.java");
       write("ParserBase.java");
       write("ParserMemo.java");
+      write("ParserRecognizer.java");
+      write("ParserRecognizerMemo.java");
       write("ParserTest.java");
       write("Phrase.java");
       write("SemanticsBase.java");
       write("Source.java");
+      write("SourceArray.java");
+      write("SourceBytes.java");
       write("SourceFile.java");
+      write("SourceMapped.java");
       write("SourceString.java");
+      write("StringSet.java");
+      write("Trie.java");
     }
 
   //=====================================================================
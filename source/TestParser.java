@@ -46,17 +46,24 @@
 //    Version 2.0
 //      Replaced deprecated method Class.newInstance()
 //      by Class.getDeclaredConstructor().newInstance()
+//    Version 2.4
+//      Accept -m F for full memoization.
+//      Added option -w.
+//      Added option -M.
+//      Added option -j.
 //
 //=========================================================================
 
 package mouse;
 
 import mouse.runtime.ParserTest.Cache;
+import mouse.runtime.ParserMemo;
 import mouse.runtime.Source;
 import mouse.runtime.SourceFile;
 import mouse.runtime.SourceString;
 import mouse.utility.CommandArgs;
 import mouse.utility.Convert;
+import mouse.utility.ParallelFiles;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -105,7 +112,15 @@ import java.util.Vector;
 //    -m <n>
 //       Amount of memoization. Optional.
 //       <n> is a digit from 1 through 9 specifying the number of results
-//       to be cached. Default is no memoization.
+//       to be cached, or F to cache all results (full memoization).
+//       Default is no memoization.
+//
+//    -w <n>
+//       Memo window. Optional; can only be specified with -m F.
+//       <n> is a positive number. Results of parsing procedures
+//       are retained in memo only for the last <n> positions
+//       in the input, which limits the memory used by -m F.
+//       Default is to retain all results.
 //
 //    -T <string>
 //       Tracing switches. Optional.
@@ -122,6 +137,10 @@ import java.util.Vector;
 //
 //    -D Show detailed statistics for all invoked procedures. Optional.
 //
+//    -M Show memo statistics: results reused, lookups that found
+//       nothing, and results evicted by the memo window. Optional;
+//       can only be specified with -m.
+//
 //    -C <file>
 //       Write all statistics as comma separated values (CSV) to file <file>,
 //       rather than to System.out. Optional; can only be specified with -F.
@@ -131,6 +150,13 @@ import java.util.Vector;
 //
 //    -t Show timing for -f and -F.
 //
+//    -j <n>
+//       Number of threads for -F. Optional; can only be specified with -F.
+//       The files are parsed by <n> threads, each with its own instance
+//       of the parser, while another thread reads the files ahead.
+//       The output and statistics are written in the order of the list.
+//       Default is to parse the files one after another.
+//
 //  If you do not specify -f or -F,  the parser is executed interactively,
 //  prompting for input by printing '>'.
 //  It is invoked separately for each input line after you press 'Enter'.
@@ -155,15 +181,18 @@ public class TestParser
   //-------------------------------------------------------------------
   static Class<?> parserClass;
   static Method setmemo;     // Set amount of memo
+  static Method setwindow;   // Set memo window
   static Method settrace;    // Set trace
   static Method parse;       // Run parser
   static Method caches;      // Get list of Cache objects
 
   //-------------------------------------------------------------------
-  //  Instantiated paser.
+  //  Instantiated paser, and parsers for threads of -j.
   //-------------------------------------------------------------------
   static Object parser;
   static Cache cacheList[];
+  static Object[] parsers;
+  static Cache[][] cacheLists;
 
   //-------------------------------------------------------------------
   //  Statistics switches.
@@ -172,6 +201,7 @@ public class TestParser
   static boolean allDetails; // -D specified
   static boolean csv;        // -C specified
   static boolean timing;     // -t specified
+  static boolean memo;       // -M specified
 
   //-------------------------------------------------------------------
   //  CSV file.
@@ -189,6 +219,8 @@ public class TestParser
   static int rescan;
   static int totback;
   static int maxback;
+  static int miss;
+  static int evict;
 
   //-------------------------------------------------------------
   //  Execution time.
@@ -215,8 +247,8 @@ public class TestParser
       //=================================================================
       cmd = new CommandArgs
              (argv,      // arguments to parse
-              "Ddt",     // options
-              "PFfmTC",  // options with argument
+              "DdtM",    // options
+              "PFfmTCwj",// options with argument
                0,0);     // no positional arguments
       if (cmd.nErrors()>0) return;
 
@@ -238,15 +270,46 @@ public class TestParser
       if (cmd.opt('m'))
       {
         String memo = cmd.optArg('m');
-        if (memo.length()!=1) m = -1;
+        if (memo.equals("F")) m = ParserMemo.FULL;
+        else if (memo.length()!=1) m = -1;
         else m = 1 + "123456789".indexOf(memo.charAt(0));
         if (m<1)
         {
-          System.out.println("-m is outside the range 1-9.");
+          System.out.println("-m is outside the range 1-9 and is not F.");
+          return;
+        }
+      }
+
+      //---------------------------------------------------------------
+      //  The -w option.
+      //---------------------------------------------------------------
+      int w = 0;
+      if (cmd.opt('w'))
+      {
+        if (m!=ParserMemo.FULL)
+        {
+          System.out.println("-w can only be specified together with -m F.");
+          return;
+        }
+        try {w = Integer.parseInt(cmd.optArg('w'));}
+        catch (NumberFormatException e) {w = -1;}
+        if (w<1)
+        {
+          System.out.println("-w is not a positive number.");
           return;
         }
       }
 
+      //---------------------------------------------------------------
+      //  The -M option.
+      //---------------------------------------------------------------
+      memo = cmd.opt('M');
+      if (memo && m==0)
+      {
+        System.out.println("-M can only be specified together with -m.");
+        return;
+      }
+
       //---------------------------------------------------------------
       //  The -T option.
       //---------------------------------------------------------------
@@ -274,6 +337,23 @@ public class TestParser
         return;
       }
 
+      int j = 0;
+      if (cmd.opt('j'))
+      {
+        if (!cmd.opt('F'))
+        {
+          System.out.println("-j can only be specified together with -F.");
+          return;
+        }
+        try {j = Integer.parseInt(cmd.optArg('j'));}
+        catch (NumberFormatException e) {j = -1;}
+        if (j<1)
+        {
+          System.out.println("-j is not a positive number.");
+          return;
+        }
+      }
+
       csv = cmd.opt('C');
       details = cmd.opt('d') | cmd.opt('D');
       allDetails = cmd.opt('D');
@@ -305,6 +385,7 @@ public class TestParser
       try
       {
         setmemo = parserClass.getMethod("setMemo",int.class);
+        setwindow = parserClass.getMethod("setWindow",int.class);
         caches  = parserClass.getMethod("caches");
       }
       catch (NoSuchMethodException e)
@@ -314,12 +395,20 @@ public class TestParser
       }
 
       //---------------------------------------------------------------
-      //  Instantiate the parser, set trace and memo, get cache list.
+      //  Instantiate the parser(s), set trace and memo, get cache list.
       //---------------------------------------------------------------
-      parser = parserClass.getDeclaredConstructor().newInstance();
-      settrace.invoke(parser,trace);
-      setmemo.invoke(parser,m);
+      parser = newParser(trace,m,w);
       cacheList = (Cache[])caches.invoke(parser);
+      if (j>0)
+      {
+        parsers = new Object[j];
+        cacheLists = new Cache[j][];
+        parsers[0] = parser;
+        for (int i=1;i<j;i++)
+          parsers[i] = newParser(trace,m,w);
+        for (int i=0;i<j;i++)
+          cacheLists[i] = (Cache[])caches.invoke(parsers[i]);
+      }
 
       //=================================================================
       //  If no input files given, run parser interactively.
@@ -385,11 +474,20 @@ public class TestParser
       //  Process the files.
       //---------------------------------------------------------------
       int failed = 0;
+      PrintStream csvOut = csvFile;          // CSV file itself
       long t0 = System.currentTimeMillis();
 
-      for (String name: files)
-        if (!test(name))
-          failed++;
+      if (j>0)
+      {
+        ParallelFiles par = new ParallelFiles(files,j);
+        if (csv) csvFile = par.order(csvFile);
+        failed = par.run
+          ((k,name,src) -> test(parsers[k],cacheLists[k],name,src));
+      }
+      else
+        for (String name: files)
+          if (!test(name))
+            failed++;
 
       long t1 = System.currentTimeMillis();
 
@@ -409,10 +507,13 @@ public class TestParser
         System.out.println("Total time " + (t1-t0) + " ms.");
 
       //---------------------------------------------------------------
-      //  Close the CSV file.
+      //  Close the CSV file (after the stream ordered by ParallelFiles).
       //---------------------------------------------------------------
       if (csv)
+      {
         csvFile.close();
+        if (csvOut!=csvFile) csvOut.close();
+      }
     }
 
   //=====================================================================
@@ -426,7 +527,19 @@ public class TestParser
       Source src = new SourceFile(name);
       if (!src.created())
         return false;
+      return test(parser,cacheList,name,src);
+    }
 
+  //=====================================================================
+  //
+  //  Run 'parser' with Cache objects 'caches' on file 'name'
+  //  contained in 'src'. The statistics are computed and written
+  //  in a synchronized block because they use static variables.
+  //
+  //=====================================================================
+  static boolean test(Object parser, Cache[] caches, String name, Source src)
+    throws IllegalAccessException,InvocationTargetException
+    {
       int size = src.end();
       System.out.printf("%n%s: %d bytes.%n",name,size);
 
@@ -438,13 +551,17 @@ public class TestParser
 
       if (parsed)
       {
-        compTotals();
-        time = t1-t0;
-        if (csv) csvTotals(name,size);
-        else writeTotals();
-        if (details)
-          if (csv) csvDetails(allDetails);
-          else writeDetails(src,allDetails);
+        synchronized(TestParser.class)
+        {
+          cacheList = caches;
+          compTotals();
+          time = t1-t0;
+          if (csv) csvTotals(name,size);
+          else writeTotals();
+          if (details)
+            if (csv) csvDetails(allDetails);
+            else writeDetails(src,allDetails);
+        }
       }
       else
       {
@@ -455,6 +572,22 @@ public class TestParser
       return true;
    }
 
+  //=====================================================================
+  //
+  //  Instantiate the parser, set trace and memo.
+  //
+  //=====================================================================
+  static Object newParser(String trace, int m, int w)
+    throws IllegalAccessException,InvocationTargetException,
+           InstantiationException,NoSuchMethodException
+    {
+      Object p = parserClass.getDeclaredConstructor().newInstance();
+      settrace.invoke(p,trace);
+      setmemo.invoke(p,m);
+      setwindow.invoke(p,w);
+      return p;
+    }
+
   //=====================================================================
   //
   //  Run test interactively
@@ -510,6 +643,8 @@ public class TestParser
       rescan  = 0;
       totback = 0;
       maxback = 0;
+      miss    = 0;
+      evict   = 0;
 
       for (Cache s: cacheList)
       {
@@ -521,6 +656,8 @@ public class TestParser
         rescan  += s.rescan;
         totback += s.totback;
         if (s.maxback>maxback) maxback = s.maxback;
+        miss    += s.miss;
+        evict   += s.evict;
       }
     }
 
@@ -544,6 +681,9 @@ public class TestParser
       System.out.print(".\n");
     else
       System.out.printf(", %d reused.%n",reuse);
+    if (memo)
+      System.out.printf("memo: %d reused, %d missed, %d evicted.%n",
+         reuse, miss, evict);
     if (back>0)
       System.out.printf
         (loc,"backtrack length: max %d, average %.1f.%n",
@@ -45,15 +45,25 @@
 //    Version 2.0
 //      Replaced deprecated method Class.newInstance()
 //      by Class.getDeclaredConstructor().newInstance()
+//    Version 2.4
+//      Accept -m F for full memoization.
+//      Added option -w.
+//      Added option -a.
+//      Added option -j.
+//      Option -t shows also throughput.
+//      Added option -q.
+//      Report -w as ignored for parser without memo window.
 //
 //=========================================================================
 
 package mouse;
 
+import mouse.runtime.ParserMemo;
 import mouse.runtime.Source;
 import mouse.runtime.SourceFile;
 import mouse.runtime.SourceString;
 import mouse.utility.CommandArgs;
+import mouse.utility.ParallelFiles;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 import java.io.BufferedReader;
@@ -61,6 +71,7 @@ import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
 import java.util.Vector;
 
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
@@ -100,7 +111,15 @@ import java.util.Vector;
 //       Amount of memoization. Optional.
 //       Applicable only to a parser generated with option -M or -T.
 //       <n> is a digit from 1 through 9 specifying the number of results
-//       to be cached. Default is no memoization.
+//       to be cached, or F to cache all results (full memoization).
+//       Default is no memoization.
+//
+//    -w <n>
+//       Memo window. Optional; can only be specified with -m F.
+//       <n> is a positive number. Results of parsing procedures
+//       are retained in memo only for the last <n> positions
+//       in the input, which limits the memory used by -m F.
+//       Default is to retain all results.
 //
 //    -T <string>
 //       Tracing switches. Optional.
@@ -108,7 +127,22 @@ import java.util.Vector;
 //       object, where it can be used it to activate any trace
 //       programmed there.
 //
-//    -t Show timing for -f and -F.
+//    -t Show timing and throughput (characters parsed per second)
+//       for -f and -F.
+//
+//    -a Show amount of memory allocated by the parser for -f and -F.
+//
+//    -j <n>
+//       Number of threads for -F. Optional; can only be specified with -F.
+//       The files are parsed by <n> threads, each with its own instance
+//       of the parser, while another thread reads the files ahead.
+//       The output is written in the order of the list.
+//       Default is to parse the files one after another.
+//
+//    -q Two-pass parsing. Optional.
+//       The input is first parsed without collecting error information,
+//       and parsed again to produce the error message if that fails.
+//       Not applicable to a parser generated with option -T.
 //
 //  If you do not specify -f or -F, the parser is executed interactively,
 //  prompting for input by printing '>'.
@@ -135,12 +169,25 @@ public class TryParser
   static Class<?> parserClass;
   static Method settrace; // Set trace switches
   static Method setmemo;  // Set amount of memo
+  static Method setwindow;// Set memo window
+  static Method settwopass;//Set two-pass mode
   static Method parse;    // Run parser
 
   //-------------------------------------------------------------------
-  //  Instantiated paser.
+  //  Instantiated paser, and parsers for threads of -j.
   //-------------------------------------------------------------------
   static Object parser;
+  static Object[] parsers;
+
+  //-------------------------------------------------------------------
+  //  Total memory allocated by the parser (for -a).
+  //-------------------------------------------------------------------
+  static long allocTotal = 0;
+
+  //-------------------------------------------------------------------
+  //  Total number of characters parsed (for -t).
+  //-------------------------------------------------------------------
+  static long charTotal = 0;
 
   //=====================================================================
   //
@@ -157,8 +204,8 @@ public class TryParser
       //=================================================================
       cmd = new CommandArgs
              (argv,      // arguments to parse
-              "t",       // options without argument
-              "PFfmT",   // options with argument
+              "taq",     // options without argument
+              "PFfmTwj", // options with argument
               0,0);      // no positional arguments
       if (cmd.nErrors()>0) return;
 
@@ -180,11 +227,32 @@ public class TryParser
       if (cmd.opt('m'))
       {
         String memo = cmd.optArg('m');
-        if (memo.length()!=1) m = -1;
+        if (memo.equals("F")) m = ParserMemo.FULL;
+        else if (memo.length()!=1) m = -1;
         else m = 1 + "123456789".indexOf(memo.charAt(0));
         if (m<1)
         {
-          System.out.println("-m is outside the range 1-9.");
+          System.out.println("-m is outside the range 1-9 and is not F.");
+          return;
+        }
+      }
+
+      //---------------------------------------------------------------
+      //  The -w option.
+      //---------------------------------------------------------------
+      int w = 0;
+      if (cmd.opt('w'))
+      {
+        if (m!=ParserMemo.FULL)
+        {
+          System.out.println("-w can only be specified together with -m F.");
+          return;
+        }
+        try {w = Integer.parseInt(cmd.optArg('w'));}
+        catch (NumberFormatException e) {w = -1;}
+        if (w<1)
+        {
+          System.out.println("-w is not a positive number.");
           return;
         }
       }
@@ -204,6 +272,26 @@ public class TryParser
         return;
       }
 
+      //---------------------------------------------------------------
+      //  The -j option.
+      //---------------------------------------------------------------
+      int j = 0;
+      if (cmd.opt('j'))
+      {
+        if (!cmd.opt('F'))
+        {
+          System.out.println("-j can only be specified together with -F.");
+          return;
+        }
+        try {j = Integer.parseInt(cmd.optArg('j'));}
+        catch (NumberFormatException e) {j = -1;}
+        if (j<1)
+        {
+          System.out.println("-j is not a positive number.");
+          return;
+        }
+      }
+
       //=================================================================
       //  Set up the parser.
       //=================================================================
@@ -238,11 +326,44 @@ public class TryParser
       }
 
       //---------------------------------------------------------------
-      //  Instantiate the parser, set trace and (optionally) memo.
+      //  Find the 'setWindow' method.
+      //  Set 'setwindow' to null if the parser has no memo window.
       //---------------------------------------------------------------
-      parser = parserClass.getDeclaredConstructor().newInstance();
-      settrace.invoke(parser,trace);
-      if (setmemo!=null) setmemo.invoke(parser,m);
+      setwindow = null;
+      if (setmemo!=null)
+      {
+        try {setwindow = parserClass.getMethod("setWindow",int.class);}
+        catch (NoSuchMethodException e) {}
+      }
+
+      if (w!=0 && setwindow==null)
+        System.out.println(parsName + " has no memo window; -w is ignored.");
+
+      //---------------------------------------------------------------
+      //  Find the 'setTwoPass' method if -q is specified.
+      //---------------------------------------------------------------
+      settwopass = null;
+      if (cmd.opt('q'))
+      {
+        try {settwopass = parserClass.getMethod("setTwoPass",boolean.class);}
+        catch (NoSuchMethodException e)
+        {
+          System.out.println(parsName + " does not support two-pass parsing.");
+          return;
+        }
+      }
+
+      //---------------------------------------------------------------
+      //  Instantiate the parser(s), set trace and (optionally) memo.
+      //---------------------------------------------------------------
+      parser = newParser(trace,m,w);
+      if (j>0)
+      {
+        parsers = new Object[j];
+        parsers[0] = parser;
+        for (int i=1;i<j;i++)
+          parsers[i] = newParser(trace,m,w);
+      }
 
       //=================================================================
       //  If no input files given, run parser interactively.
@@ -297,13 +418,17 @@ public class TryParser
       //  Process the files.
       //---------------------------------------------------------------
       int failed = 0;
-      long t0 = System.currentTimeMillis();
+      long t0 = System.nanoTime();
 
-      for (String name: files)
-        if (!test(name))
-          failed++;
+      if (j>0)
+        failed = new ParallelFiles(files,j).run
+                   ((k,name,src) -> test(parsers[k],name,src));
+      else
+        for (String name: files)
+          if (!test(name))
+            failed++;
 
-      long t1 = System.currentTimeMillis();
+      long t1 = System.nanoTime();
 
       //---------------------------------------------------------------
       //  Write number of processed / failed files.
@@ -318,7 +443,16 @@ public class TryParser
       //  Write total time if requested.
       //---------------------------------------------------------------
       if (cmd.opt('t'))
-        System.out.println("Total time " + (t1-t0) + " ms.");
+      {
+        System.out.println("Total time " + (t1-t0)/1000000 + " ms.");
+        System.out.println("Throughput " + throughput(charTotal,t1-t0) + ".");
+      }
+
+      //---------------------------------------------------------------
+      //  Write total allocated memory if requested.
+      //---------------------------------------------------------------
+      if (cmd.opt('a'))
+        System.out.println("Total allocated " + allocTotal/1024 + " kB.");
     }
 
   //=====================================================================
@@ -332,14 +466,31 @@ public class TryParser
       Source src = new SourceFile(name);
       if (!src.created())
         return false;
+      return test(parser,name,src);
+    }
 
+  //=====================================================================
+  //
+  //  Run 'parser' on file 'name' contained in 'src'
+  //
+  //=====================================================================
+  static boolean test(Object parser, String name, Source src)
+    throws IllegalAccessException,InvocationTargetException
+    {
       System.out.println("\n" + name);
 
-      long t0 = System.currentTimeMillis();
+      long a0 = allocated();
+      long t0 = System.nanoTime();
 
       boolean parsed = (Boolean)(parse.invoke(parser,src));
 
-      long t1 = System.currentTimeMillis();
+      long t1 = System.nanoTime();
+      long a1 = allocated();
+      synchronized(TryParser.class)
+      {
+        allocTotal += a1-a0;
+        charTotal += src.end();
+      }
 
       if (!parsed)
       {
@@ -348,11 +499,58 @@ public class TryParser
       }
 
       if (cmd.opt('t'))
-        System.out.println("--- " + (t1-t0) + " ms.");
+        System.out.println("--- " + (t1-t0)/1000000 + " ms, "
+                           + throughput(src.end(),t1-t0) + ".");
+
+      if (cmd.opt('a'))
+        System.out.println("--- " + (a1-a0)/1024 + " kB allocated.");
 
       return true;
     }
 
+  //=====================================================================
+  //
+  //  Instantiate the parser, set trace and (optionally) memo
+  //  and two-pass mode.
+  //
+  //=====================================================================
+  static Object newParser(String trace, int m, int w)
+    throws IllegalAccessException,InvocationTargetException,
+           InstantiationException,NoSuchMethodException
+    {
+      Object p = parserClass.getDeclaredConstructor().newInstance();
+      settrace.invoke(p,trace);
+      if (setmemo!=null) setmemo.invoke(p,m);
+      if (setwindow!=null) setwindow.invoke(p,w);
+      if (settwopass!=null)
+        settwopass.invoke(p,true);
+      return p;
+    }
+
+  //=====================================================================
+  //
+  //  Throughput of parsing 'n' characters in 't' nanoseconds.
+  //
+  //=====================================================================
+  static String throughput(long n, long t)
+    {
+      if (t<=0) return n + " characters";
+      return (long)(n*1e9/t) + " characters/s";
+    }
+
+  //=====================================================================
+  //
+  //  Number of bytes allocated so far by current thread.
+  //
+  //=====================================================================
+  static long allocated()
+    {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean)
+        return ((com.sun.management.ThreadMXBean)bean).getCurrentThreadAllocatedBytes();
+      return 0;
+    }
+
   //=====================================================================
   //
   //  Run parser interactively
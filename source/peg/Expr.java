@@ -50,6 +50,8 @@
 //    Removed 'firstTailTerms'. They belong to Tail.
 //    Removed 'final' modifier from parameters to subclass creators.
 //    New constructor for Rule - creates dummy Rule for PEG's RefVisitor.
+//  Version 2.4
+//    New fields 'firstChars' and 'empty' for use in Generate.
 
 //
 //=========================================================================
@@ -144,6 +146,12 @@ public abstract class Expr
   public BitSet firstTerms = new BitSet();  // First terminals
   public Tail tail;                         // The Tail
 
+  //-------------------------------------------------------------------
+  //  For use in Generate (computed by PEG.firstChars).
+  //-------------------------------------------------------------------
+  public BitSet firstChars = new BitSet();  // First characters
+  public boolean empty = false;             // May succeed consuming nothing
+
   //-------------------------------------------------------------------
   //  Binding strength.
   //-------------------------------------------------------------------
@@ -63,11 +63,14 @@
 //    Moved 'firstTailTerms' to Tail.
 //    Method 'show' replaced by 'showExprs'.
 //    Modified method 'showCounts'.
+//  Version 2.4
+//    Added 'firstChars'.
 //
 //=========================================================================
 
 package mouse.peg;
 
+import java.util.BitSet;
 import java.util.Hashtable;
 import java.util.HashSet;
 import java.util.Vector;
@@ -138,6 +141,7 @@ public class PEG
   //-------------------------------------------------------------------
   public static int errors;     // Errors
   public static int iterAt;     // Iterations for attributes
+  public static int iterFc;     // Iterations for first characters
 
   //=======================================================================
   //
@@ -459,6 +463,50 @@ public class PEG
       }
     }
 
+  //=====================================================================
+  //
+  //  Compute first characters for all expressions.
+  //
+  //---------------------------------------------------------------------
+  //
+  //  For each expression, 'firstChars' is the set of characters
+  //  that may be the first character consumed by the expression,
+  //  and 'empty' is true if the expression may succeed without
+  //  consuming input. Both are approximations from above:
+  //  an expression that does not have 'empty' and is applied
+  //  to input that does not start with one of 'firstChars'
+  //  (or to end of input) is certain to fail.
+  //  Predicates do not consume input, so their 'firstChars' are empty.
+  //  Unlike attribute 'nul', 'empty' is true for Expr.End.
+  //  The sets are computed by iteration to a fixpoint,
+  //  in the same way as attributes. The iteration step
+  //  is performed by FirstVisitor.
+  //
+  //=====================================================================
+  public static void firstChars()
+    {
+      FirstVisitor firstVisitor = new FirstVisitor();
+      iterFc = 0;
+
+      //---------------------------------------------------------------
+      //  Terminals.
+      //---------------------------------------------------------------
+      for (int i=N;i<E;i++)
+        index[i].accept(firstVisitor);
+
+      //---------------------------------------------------------------
+      //  Nonterminals.
+      //---------------------------------------------------------------
+      while(true)
+      {
+        firstVisitor.changed = false;
+        for (int i=0;i<N;i++)
+          index[i].accept(firstVisitor);
+        if (!firstVisitor.changed) break;
+        iterFc++;
+      }
+    }
+
   //=====================================================================
   //
   //  Find left-recursion classes.
@@ -995,6 +1043,125 @@ public class PEG
   }
 
 
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  FirstVisitor - Compute first characters.
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Each visit to a nonterminal adds to its 'firstChars' and 'empty'
+  //  those implied by its subexpressions, and sets 'changed'
+  //  if anything was added. Visits to terminals set them once.
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+  static class FirstVisitor extends mouse.peg.Visitor
+  {
+    boolean changed;
+
+    public void visit(Expr.Rule expr)
+      {
+        for (Expr arg: expr.args)
+          add(expr,arg.firstChars,arg.empty);
+      }
+
+    public void visit(Expr.Choice expr)
+      {
+        for (Expr arg: expr.args)
+          add(expr,arg.firstChars,arg.empty);
+      }
+
+    public void visit(Expr.Sequence expr)
+      {
+        boolean empty = true;
+        for (Expr arg: expr.args)
+        {
+          add(expr,arg.firstChars,false);
+          if (!arg.empty)
+          {
+            empty = false;
+            break;
+          }
+        }
+        add(expr,null,empty);
+      }
+
+    public void visit(Expr.And expr)
+      { add(expr,null,true); }
+
+    public void visit(Expr.Not expr)
+      { add(expr,null,true); }
+
+    public void visit(Expr.Plus expr)
+      { add(expr,expr.arg.firstChars,expr.arg.empty); }
+
+    public void visit(Expr.Star expr)
+      { add(expr,expr.arg.firstChars,true); }
+
+    public void visit(Expr.Query expr)
+      { add(expr,expr.arg.firstChars,true); }
+
+    public void visit(Expr.PlusPlus expr)
+      {
+        add(expr,expr.arg1.firstChars,false);
+        add(expr,expr.arg2.firstChars,expr.arg1.empty & expr.arg2.empty);
+      }
+
+    public void visit(Expr.StarPlus expr)
+      {
+        add(expr,expr.arg1.firstChars,false);
+        add(expr,expr.arg2.firstChars,expr.arg2.empty);
+      }
+
+    public void visit(Expr.Is expr)
+      { add(expr,expr.arg1.firstChars,expr.arg1.empty); }
+
+    public void visit(Expr.IsNot expr)
+      { add(expr,expr.arg1.firstChars,expr.arg1.empty); }
+
+    public void visit(Expr.StringLit expr)
+      {
+        if (expr.s.length()>0) expr.firstChars.set(expr.s.charAt(0));
+        else expr.empty = true;
+      }
+
+    public void visit(Expr.CharClass expr)
+      {
+        for (int i=0;i<expr.s.length();i++)
+          expr.firstChars.set(expr.s.charAt(i));
+        if (expr.hat) expr.firstChars.flip(0,Character.MAX_VALUE+1);
+      }
+
+    public void visit(Expr.Range expr)
+      {
+        if (expr.a<=expr.z)
+          expr.firstChars.set(expr.a,expr.z+1);
+      }
+
+    public void visit(Expr.Any expr)
+      { expr.firstChars.set(0,Character.MAX_VALUE+1); }
+
+    public void visit(Expr.End expr)
+      { expr.empty = true; }
+
+    //-----------------------------------------------------------------
+    //  Add 'chars' (if not null) and 'empty' to 'expr'.
+    //-----------------------------------------------------------------
+    private void add(Expr expr, BitSet chars, boolean empty)
+      {
+        if (empty && !expr.empty)
+        {
+          expr.empty = true;
+          changed = true;
+        }
+        if (chars==null) return;
+        int n = expr.firstChars.cardinality();
+        expr.firstChars.or(chars);
+        if (expr.firstChars.cardinality()!=n) changed = true;
+      }
+  }
+
+
   //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
   //
   //  CompactVisitor - eliminates duplicate expresions
@@ -0,0 +1,99 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  CharSet
+//
+//-------------------------------------------------------------------------
+//
+//  Set of characters, generated as a static constant of the parser.
+//  Characters 0-255 are looked up in a table of bits; other
+//  characters by binary search in a sorted list of ranges.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class CharSet
+{
+  //-------------------------------------------------------------------
+  //  Bits for characters 0-255.
+  //-------------------------------------------------------------------
+  private final long[] bits = new long[4];
+
+  //-------------------------------------------------------------------
+  //  Ranges from[i]-to[i] of characters above 255.
+  //-------------------------------------------------------------------
+  private final char[] from;
+  private final char[] to;
+
+  //-------------------------------------------------------------------
+  //  Constructor. The string 'ranges' consists of pairs of characters
+  //  a,z representing ranges a-z, sorted and disjoint.
+  //-------------------------------------------------------------------
+  public CharSet(String ranges)
+    {
+      int n = 0;
+      for (int i=0;i<ranges.length();i+=2)
+        if (ranges.charAt(i+1)>255) n++;
+      from = new char[n];
+      to = new char[n];
+
+      n = 0;
+      for (int i=0;i<ranges.length();i+=2)
+      {
+        char a = ranges.charAt(i);
+        char z = ranges.charAt(i+1);
+        for (int c=a;c<=z && c<256;c++)
+          bits[c>>6] |= 1L<<c;
+        if (z>255)
+        {
+          from[n] = a>255? a : 256;
+          to[n] = z;
+          n++;
+        }
+      }
+    }
+
+  //-------------------------------------------------------------------
+  //  Is 'c' in the set? (False for -1, representing end of text.)
+  //-------------------------------------------------------------------
+  public boolean contains(int c)
+    {
+      if (c<256) return c>=0 && (bits[c>>6] & 1L<<c)!=0;
+      int lo = 0;
+      int hi = from.length-1;
+      while (lo<=hi)
+      {
+        int m = (lo+hi)>>>1;
+        if (c<from[m]) hi = m-1;
+        else if (c>to[m]) lo = m+1;
+        else return true;
+      }
+      return false;
+    }
+}
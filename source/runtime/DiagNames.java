@@ -0,0 +1,112 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  DiagNames
+//
+//-------------------------------------------------------------------------
+//
+//  Table of diagnostic names: the texts that identify failing
+//  expressions in error messages, such as "'+'" or "not [a-z]".
+//  Each name is identified by a small integer id.
+//  Failures are registered in Phrases by their ids, and the names
+//  are looked up only to construct an error message.
+//
+//  The table is preset with names in the order of ids assigned
+//  by the generator. Names that are not preset (diagnostic names
+//  of Rules, names from parsers generated by earlier versions,
+//  or names added by semantic actions via 'errAdd') receive
+//  ids when first encountered.
+//
+//  The table can be shared by parsers running in different threads.
+//  Looking up a known name does not lock; adding a name does.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class DiagNames
+{
+  //-------------------------------------------------------------------
+  //  Names in the order of ids.
+  //-------------------------------------------------------------------
+  private volatile String[] names;
+  private int count;
+
+  //-------------------------------------------------------------------
+  //  Ids of names.
+  //-------------------------------------------------------------------
+  private ConcurrentHashMap<String,Integer> ids
+    = new ConcurrentHashMap<String,Integer>();
+
+  //-------------------------------------------------------------------
+  //  Constructor
+  //-------------------------------------------------------------------
+  public DiagNames(String[] preset)
+    {
+      names = new String[preset.length+16];
+      count = 0;
+      for (String s: preset)
+        id(s);
+    }
+
+  //-------------------------------------------------------------------
+  //  Get id of name 's', assigning a new id if not yet known.
+  //-------------------------------------------------------------------
+  public int id(String s)
+    {
+      Integer i = ids.get(s);
+      if (i!=null) return i;
+      return add(s);
+    }
+
+  //-------------------------------------------------------------------
+  //  Add name 's' unless added meanwhile by another thread.
+  //-------------------------------------------------------------------
+  private synchronized int add(String s)
+    {
+      Integer i = ids.get(s);
+      if (i!=null) return i;
+      if (count==names.length)
+      {
+        String[] n = new String[2*count];
+        System.arraycopy(names,0,n,0,count);
+        names = n;
+      }
+      names[count] = s;
+      ids.put(s,count);
+      return count++;
+    }
+
+  //-------------------------------------------------------------------
+  //  Get name identified by 'id'.
+  //-------------------------------------------------------------------
+  public String name(int id)
+    { return names[id]; }
+}
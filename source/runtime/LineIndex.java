@@ -0,0 +1,121 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  LineIndex
+//
+//-------------------------------------------------------------------------
+//
+//  Start positions of lines in the text of a Source, found in one scan
+//  for newline characters. Line of a position is found by binary search.
+//  Lines and columns are numbered starting with 1. A newline belongs
+//  to the line it terminates.
+//
+//  Wrappers create the index when first needed, and keep it.
+//  It does not change after creation, and can be shared by threads.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class LineIndex
+{
+  //-------------------------------------------------------------------
+  //  Start position of line i+1 is 'starts[i]'.
+  //-------------------------------------------------------------------
+  private final int[] starts;
+
+  //-------------------------------------------------------------------
+  //  End position of the text.
+  //-------------------------------------------------------------------
+  private final int end;
+
+  //-------------------------------------------------------------------
+  //  Constructor. Scans the text of 'src'.
+  //-------------------------------------------------------------------
+  public LineIndex(Source src)
+    {
+      end = src.end();
+      char[] chars = src.chars();
+      int[] s = new int[64];
+      int n = 1;                       // s[0] = 0
+      for (int p=0;p<end;p++)
+      {
+        char c = chars!=null? chars[p] : src.at(p);
+        if (c!='\n') continue;
+        if (n==s.length)
+        {
+          int[] t = new int[2*n];
+          System.arraycopy(s,0,t,0,n);
+          s = t;
+        }
+        s[n++] = p+1;
+      }
+      starts = new int[n];
+      System.arraycopy(s,0,starts,0,n);
+    }
+
+  //-------------------------------------------------------------------
+  //  Number of lines.
+  //-------------------------------------------------------------------
+  public int lines()
+    { return starts.length; }
+
+  //-------------------------------------------------------------------
+  //  Line containing position p.
+  //-------------------------------------------------------------------
+  public int line(int p)
+    {
+      int lo = 0;
+      int hi = starts.length-1;
+      while (lo<hi)                    // Last start <= p
+      {
+        int m = (lo+hi+1)>>>1;
+        if (starts[m]<=p) lo = m;
+        else hi = m-1;
+      }
+      return lo+1;
+    }
+
+  //-------------------------------------------------------------------
+  //  Column of position p.
+  //-------------------------------------------------------------------
+  public int column(int p)
+    { return p-start(line(p))+1; }
+
+  //-------------------------------------------------------------------
+  //  Start position of line 'ln'.
+  //-------------------------------------------------------------------
+  public int start(int ln)
+    { return starts[ln-1]; }
+
+  //-------------------------------------------------------------------
+  //  End position of line 'ln', excluding its newline.
+  //-------------------------------------------------------------------
+  public int end(int ln)
+    { return ln<starts.length? starts[ln]-1 : end; }
+}
@@ -0,0 +1,619 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//      Names in frames and rhs buffer kept as ids in table 'diags'.
+//      Inlined subexpressions save and restore the tops of buffers.
+//      Added 'is' with StringSet.
+//      'retry' keeps deferred actions of the first pass;
+//      'actLhs' for error information set by semantic actions.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.Arrays;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  ParserArray
+//
+//-------------------------------------------------------------------------
+//
+//  Base for parsers generated with option -A.
+//
+//  The parse stack is not a chain of Phrases, but a stack of frames
+//  kept in parallel arrays indexed by depth. A frame has start
+//  position, ids of names, high-water mark, and indexes into two shared
+//  buffers: one for the right-hand sides, and one for deferred actions.
+//  The right-hand side of a frame is always at the end of rhs buffer,
+//  so accepting inner expression does not move anything,
+//  and rejecting an expression just truncates the buffers.
+//
+//  A Phrase is created for a frame only if semantic action calls
+//  'lhs()'. After such call, the Phrase holds high-water mark
+//  and deferred actions of the frame. When the frame is accepted,
+//  the Phrase is placed in rhs buffer of the parent frame.
+//  Otherwise, rhs buffer contains only the start, end and names
+//  of the accepted Rule or terminal. The Phrase for it is created
+//  only if semantic action calls 'rhs(i)'. Such Phrase does not
+//  have error information.
+//
+//  Left recursion, memoization and instrumentation are not supported.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class ParserArray extends ParserBase
+{
+  //-------------------------------------------------------------------
+  //  Stack of frames. Top of stack is at 'sp'.
+  //  Frame 0 is dummy bottom of the stack.
+  //-------------------------------------------------------------------
+  int sp;
+  int[]    fStart = new int[64];      // Start position
+  int[]    fName  = new int[64];      // Id of name of creating expression
+  int[]    fDiag  = new int[64];      // Id of name in error messages
+  int[]    fHwm   = new int[64];      // High-water mark
+  int[][]  fExp   = new int[64][];    // Ids of expressions failed at 'hwm'
+  int[]    fCnt   = new int[64];      // Number of ids in 'fExp'
+  int[]    fRhs   = new int[64];      // Start of rhs in rhs buffer
+  int[]    fAct   = new int[64];      // Start of actions in action buffer
+  Phrase[] fLhs   = new Phrase[64];   // Phrase created by 'lhs()' or null
+
+  //-------------------------------------------------------------------
+  //  Rhs buffer. Top of buffer is at 'rTop'.
+  //  Element is either a Phrase or, if 'rPhrase' is null,
+  //  represented by start, end and ids of names (-1 for terminal).
+  //-------------------------------------------------------------------
+  int rTop;
+  Phrase[] rPhrase = new Phrase[256];
+  int[]    rStart  = new int[256];
+  int[]    rEnd    = new int[256];
+  int[]    rName   = new int[256];
+  int[]    rDiag   = new int[256];
+
+  //-------------------------------------------------------------------
+  //  Action buffer. Top of buffer is at 'aTop'.
+  //-------------------------------------------------------------------
+  int aTop;
+  FuncVV[] acts = new FuncVV[16];
+
+  //-------------------------------------------------------------------
+  //  Constructor
+  //-------------------------------------------------------------------
+  protected ParserArray()
+    {}
+
+  //-------------------------------------------------------------------
+  //  Initialize parsing
+  //-------------------------------------------------------------------
+  public void init(Source src)
+    {
+      super.init(src);
+      truncRhs(0);
+      truncActs(0);
+      for (int i=0;i<=sp;i++) fLhs[i] = null;
+      sp = -1;
+      begin(-1,-1);                 // Dummy bottom of parse stack
+    }
+
+  //-------------------------------------------------------------------
+  //  Implementation of Parser interface CurrentRule
+  //-------------------------------------------------------------------
+  public Phrase lhs()
+    {
+      Phrase p = fLhs[sp];
+      if (p==null)
+      {
+        p = newPhrase(fName[sp],fDiag[sp],fStart[sp]);
+        p.hwmCopyFrom(fHwm[sp],fExp[sp],fCnt[sp]);
+        fLhs[sp] = p;
+      }
+      p.end = pos;
+      for (int i=fAct[sp];i<aTop;i++)  // Move actions to the Phrase
+        p.actAdd(acts[i]);
+      truncActs(fAct[sp]);
+      return p;
+    }
+
+  public Phrase rhs(int i)
+    {
+      int k = fRhs[sp] + i;
+      if (i<0 || k>=rTop) throw new ArrayIndexOutOfBoundsException(i);
+      Phrase p = rPhrase[k];
+      if (p!=null) return p;
+      p = newPhrase(rName[k],rDiag[k],rStart[k]);
+      p.end = rEnd[k];
+      p.success = rName[k]>=0;
+      rPhrase[k] = p;
+      return p;
+    }
+
+  public int rhsSize()
+    { return rTop - fRhs[sp]; }
+
+  public String rhsText(int i,int j)
+    {
+      if (j<=i) return "";
+      return source.at(rStart[fRhs[sp]+i],rEnd[fRhs[sp]+j-1]);
+    }
+
+  //-------------------------------------------------------------------
+  //  Phrase that semantic action obtained by 'lhs()', or null.
+  //-------------------------------------------------------------------
+  Phrase actLhs()
+    { return fLhs[sp]; }
+
+  //-------------------------------------------------------------------
+  //  Prepare second pass of two-pass parsing, keeping deferred
+  //  actions of the first pass in the action buffer.
+  //-------------------------------------------------------------------
+  protected boolean retry(Source src)
+    {
+      if (track) return false;
+      int n = aTop;
+      FuncVV[] a = Arrays.copyOf(acts,n);
+      super.retry(src);
+      System.arraycopy(a,0,acts,0,n);
+      aTop = n;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Close parser: print messages (if not caught otherwise).
+  //-------------------------------------------------------------------
+  protected void closeParser(boolean ok)
+    {
+      for (int i=0;i<aTop;i++)
+        acts[i].exec();
+      truncActs(0);
+      if (!ok && fHwm[0]>=0)
+      {
+        Phrase p = newPhrase("","",0);
+        p.hwmCopyFrom(fHwm[0],fExp[0],fCnt[0]);
+        System.out.println(p.errMsg());
+      }
+    }
+
+  //=====================================================================
+  //
+  //  Service methods called from parsing procedures.
+  //  Override methods in ParserBase.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Initialize processing of a nonterminal: push new frame.
+  //-------------------------------------------------------------------
+  protected void begin(int name,int diag)
+    {
+      sp++;
+      if (sp==fStart.length) growStack();
+      fStart[sp] = pos;
+      fName[sp] = name;
+      fDiag[sp] = diag;
+      fHwm[sp] = -1;
+      fCnt[sp] = 0;
+      fRhs[sp] = rTop;
+      fAct[sp] = aTop;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept Rule.
+  //-------------------------------------------------------------------
+  protected boolean accept()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      hwmUpdFrom(sp,f);                // Update failure history
+      truncRhs(fRhs[f]);               // Discard rhs of f
+      Phrase p = fLhs[f];
+      if (p==null)                     // Add f to the rhs
+        addRhs(null,fStart[f],pos,fName[f],fDiag[f]);
+      else
+      {
+        fLhs[f] = null;
+        p.end = pos;
+        p.success = true;
+        insertActs(fAct[f],p);         // Propagate deferred actions
+        addRhs(p,p.start,pos,p.id,p.diagId);
+      }
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept Inner.
+  //  The rhs of inner frame is already at the end of parent's rhs,
+  //  and its deferred actions at the end of parent's actions.
+  //-------------------------------------------------------------------
+  protected boolean acceptInner()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      hwmUpdFrom(sp,f);                // Update failure history
+      Phrase p = fLhs[f];
+      if (p!=null)
+      {
+        fLhs[f] = null;
+        insertActs(fAct[f],p);         // Propagate deferred actions
+      }
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept predicate.
+  //-------------------------------------------------------------------
+  protected boolean acceptPred()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      pos = fStart[f];                 // Do not consume input
+      drop(f);                         // Discard rhs and actions
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject Rule.
+  //-------------------------------------------------------------------
+  protected boolean reject()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      pos = fStart[f];                 // Do not consume input
+                                       // Update error info
+      int h = hwm(f);
+      if (!track);                     //   Not registered
+      else if (pos<h);                 //   There was later failure
+      else if (h==-2) hwmClear(f,-1);  //   Ignore indicator was set
+      else if (h==-1 ||                //   If no error yet..
+               !ascent(f))             //   ..or this is not ascent
+        hwmSet(f,fDiag[f],pos);        // ..register failure of f
+      hwmUpdFrom(sp,f);                // Update failure history
+      drop(f);                         // Discard rhs and actions
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject Inner.
+  //-------------------------------------------------------------------
+  protected boolean rejectInner()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      pos = fStart[f];                 // Do not consume input
+      hwmUpdFrom(sp,f);                // Update failure history
+      drop(f);                         // Discard rhs and actions
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject predicate.
+  //-------------------------------------------------------------------
+  protected boolean rejectPred()
+    {
+      int f = sp--;                    // Pop the finishing frame
+      pos = fStart[f];                 // Do not consume input
+      if (track)                       // Register 'xxx (not) expected'
+        hwmSet(f,fDiag[f],pos);
+      hwmUpdFrom(sp,f);                // Update failure history
+      drop(f);                         // Discard rhs and actions
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Inlined subexpressions. Override methods in ParserBase.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Begin inlined subexpression: save tops of buffers.
+  //-------------------------------------------------------------------
+  protected boolean beginInl()
+    {
+      pushInl(rTop,aTop);
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  End inlined subexpression: accept if 'ok', otherwise reject.
+  //-------------------------------------------------------------------
+  protected boolean endInl(boolean ok)
+    {
+      inlTop -= 3;                     // Pop the entry
+      if (ok) return true;
+      pos = inl[inlTop];               // Do not consume input
+      truncRhs(inl[inlTop+1]);         // Discard added rhs..
+      truncActs(inl[inlTop+2]);        // ..and actions
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Service method for operation 'a:b' and a:!b'
+  //
+  //=====================================================================
+  protected boolean is(boolean ok, FuncVB a,FuncVB b)
+    {
+      int savestart = pos;
+      if (!a.exec()) return false;
+      int saveend = pos;
+
+      begin(-1,-1);                      // Frame for 'b'
+      pos = savestart;
+      endpos = saveend;
+
+      boolean match = b.exec() && pos==endpos;
+
+      pos = saveend;
+      endpos = source.end();
+      drop(sp--);
+
+      if (match==ok) return true;
+      if (track)
+        hwmSet(sp,diags.id("is expression"),savestart);
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  The same where 'b' is a choice of string literals.
+  //-------------------------------------------------------------------
+  protected boolean is(boolean ok, FuncVB a,StringSet set)
+    {
+      int savestart = pos;
+      if (!a.exec()) return false;
+      if (set.contains(source,chars,savestart,pos)==ok) return true;
+      if (track)
+        hwmSet(sp,diags.id("is expression"),savestart);
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Terminals. Override methods in ParserBase.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Consume terminal
+  //-------------------------------------------------------------------
+  boolean consume(int n)
+    {
+      addRhs(null,pos,pos+n,-1,-1);
+      pos += n;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Fail
+  //-------------------------------------------------------------------
+  boolean fail(int e)
+    {
+      if (!track) return false;
+      Phrase p = fLhs[sp];
+      if (p!=null)
+      {
+        p.hwmUpd(e,pos);
+        return false;
+      }
+      if (fHwm[sp]>pos) return false;  // If 'pos' older: forget
+      if (fHwm[sp]<pos)                // If 'pos' newer: replace
+      {
+        fCnt[sp] = 0;
+        fHwm[sp] = pos;
+      }
+      addExp(sp,e);                    // If same position: add
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  High-water mark of frame. If the frame has Phrase,
+  //  the mark is kept in the Phrase.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Get mark position.
+  //-------------------------------------------------------------------
+  private int hwm(int f)
+    { return fLhs[f]!=null? fLhs[f].hwm : fHwm[f]; }
+
+  //-------------------------------------------------------------------
+  //  Is frame 'f' for an ascent procedure?
+  //-------------------------------------------------------------------
+  private boolean ascent(int f)
+    { return fName[f]>=0 && diags.name(fName[f]).charAt(0)=='$'; }
+
+  //-------------------------------------------------------------------
+  //  Set empty mark at position 'h'.
+  //-------------------------------------------------------------------
+  private void hwmClear(int f, int h)
+    {
+      Phrase p = fLhs[f];
+      if (p!=null)
+      {
+        p.hwmClear();
+        p.hwm = h;
+        return;
+      }
+      fCnt[f] = 0;
+      fHwm[f] = h;
+    }
+
+  //-------------------------------------------------------------------
+  //  Set fresh mark ('what' failed 'where'), discarding any previous.
+  //-------------------------------------------------------------------
+  private void hwmSet(int f, int what, int where)
+    {
+      Phrase p = fLhs[f];
+      if (p!=null)
+      {
+        p.hwmSet(what,where);
+        return;
+      }
+      fCnt[f] = 0;
+      addExp(f,what);
+      fHwm[f] = where;
+    }
+
+  //-------------------------------------------------------------------
+  //  Update mark of frame 'f' with that from frame 'g'.
+  //-------------------------------------------------------------------
+  private void hwmUpdFrom(int f, int g)
+    {
+      Phrase q = fLhs[g];
+      int h = q!=null? q.hwm : fHwm[g];
+      int[] exp = q!=null? q.hwmExp : fExp[g];
+      int cnt = q!=null? q.hwmCnt : fCnt[g];
+
+      Phrase p = fLhs[f];
+      if (p!=null)
+      {
+        p.hwmUpdFrom(h,exp,cnt);
+        return;
+      }
+      if (fHwm[f]>h) return;           // If g's info older: forget
+      if (fHwm[f]<h)                   // If g's info  newer: replace
+      {
+        fCnt[f] = 0;
+        fHwm[f] = h;
+      }
+      for (int i=0;i<cnt;i++)          // If same position: add
+        addExp(f,exp[i]);
+    }
+
+  //-------------------------------------------------------------------
+  //  Add id 'what' to mark of frame 'f' unless already there.
+  //-------------------------------------------------------------------
+  private void addExp(int f, int what)
+    {
+      int[] exp = fExp[f];
+      int cnt = fCnt[f];
+      if (exp==null)
+        exp = fExp[f] = new int[4];
+      else
+      {
+        for (int i=0;i<cnt;i++)
+          if (exp[i]==what) return;
+        if (cnt==exp.length)
+        {
+          exp = new int[2*cnt];
+          System.arraycopy(fExp[f],0,exp,0,cnt);
+          fExp[f] = exp;
+        }
+      }
+      exp[cnt] = what;
+      fCnt[f] = cnt+1;
+    }
+
+  //=====================================================================
+  //
+  //  Buffers
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Discard rhs and actions of popped frame 'f'.
+  //-------------------------------------------------------------------
+  private void drop(int f)
+    {
+      fLhs[f] = null;
+      truncRhs(fRhs[f]);
+      truncActs(fAct[f]);
+    }
+
+  //-------------------------------------------------------------------
+  //  Append element to rhs buffer.
+  //-------------------------------------------------------------------
+  private void addRhs(Phrase p, int start, int end, int name, int diag)
+    {
+      if (rTop==rStart.length) growRhs();
+      rPhrase[rTop] = p;
+      rStart[rTop] = start;
+      rEnd[rTop] = end;
+      rName[rTop] = name;
+      rDiag[rTop] = diag;
+      rTop++;
+    }
+
+  //-------------------------------------------------------------------
+  //  Truncate rhs buffer to 'n' elements, releasing Phrases.
+  //-------------------------------------------------------------------
+  private void truncRhs(int n)
+    {
+      for (int i=n;i<rTop;i++)
+        rPhrase[i] = null;
+      rTop = n;
+    }
+
+  //-------------------------------------------------------------------
+  //  Truncate action buffer to 'n' elements.
+  //-------------------------------------------------------------------
+  private void truncActs(int n)
+    {
+      for (int i=n;i<aTop;i++)
+        acts[i] = null;
+      aTop = n;
+    }
+
+  //-------------------------------------------------------------------
+  //  Insert deferred actions of Phrase 'p' at position 'n'
+  //  of action buffer. (They precede actions added to the buffer
+  //  after the last call to 'lhs()'.)
+  //-------------------------------------------------------------------
+  private void insertActs(int n, Phrase p)
+    {
+      if (p.defAct==null || p.defAct.isEmpty()) return;
+      int k = p.defAct.size();
+      while (aTop+k>acts.length)
+      {
+        FuncVV[] a = new FuncVV[2*acts.length];
+        System.arraycopy(acts,0,a,0,aTop);
+        acts = a;
+      }
+      System.arraycopy(acts,n,acts,n+k,aTop-n);
+      for (int i=0;i<k;i++)
+        acts[n+i] = p.defAct.elementAt(i);
+      aTop += k;
+    }
+
+  //-------------------------------------------------------------------
+  //  Double the size of stack.
+  //-------------------------------------------------------------------
+  private void growStack()
+    {
+      int n = 2*fStart.length;
+      fStart = java.util.Arrays.copyOf(fStart,n);
+      fName  = java.util.Arrays.copyOf(fName,n);
+      fDiag  = java.util.Arrays.copyOf(fDiag,n);
+      fHwm   = java.util.Arrays.copyOf(fHwm,n);
+      fExp   = java.util.Arrays.copyOf(fExp,n);
+      fCnt   = java.util.Arrays.copyOf(fCnt,n);
+      fRhs   = java.util.Arrays.copyOf(fRhs,n);
+      fAct   = java.util.Arrays.copyOf(fAct,n);
+      fLhs   = java.util.Arrays.copyOf(fLhs,n);
+    }
+
+  //-------------------------------------------------------------------
+  //  Double the size of rhs buffer.
+  //-------------------------------------------------------------------
+  private void growRhs()
+    {
+      int n = 2*rStart.length;
+      rPhrase = java.util.Arrays.copyOf(rPhrase,n);
+      rStart  = java.util.Arrays.copyOf(rStart,n);
+      rEnd    = java.util.Arrays.copyOf(rEnd,n);
+      rName   = java.util.Arrays.copyOf(rName,n);
+      rDiag   = java.util.Arrays.copyOf(rDiag,n);
+    }
+}
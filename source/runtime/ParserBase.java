@@ -78,12 +78,58 @@
 //      Erase error history if Rule was completed by a failure
 //      (clean up of fix from Version 1.9.2).
 //      Use 'FuncVV' instead of 'SemAction'.
+//   Version 2.4
+//      Failures are registered by ids of diagnostic names
+//      from table 'diags', preset by the generated parser
+//      via 'setDiags'. Terminal methods called by generated parsers
+//      receive the id as parameter, so the names are not constructed
+//      at each failure. The previous terminal methods are kept
+//      for parsers generated by earlier versions.
+//      Added 'elide' to keep terminals in rhs as spans.
+//      Use Phrase methods for rhs and deferred actions
+//      that are created on first use.
+//      'consume' and 'fail' are package-private to be overridden
+//      by ParserArray.
+//      Recycling mode ('setRecycle'): Phrases and parse stack
+//      are kept between parses and reused; 'epoch' identifies
+//      the current parse. Phrases are created by 'newPhrase'.
+//      'setDiags' for table of names shared by re-entrant parser.
+//      Added 'peek', 'peekIn' and 'skip' for selection of alternatives
+//      and guards by the next character.
+//      Methods for [s] and [a-z] with characters given by CharSet.
+//      Methods 'nextStar', 'nextPlus' and 'nextUntil' for repetitions
+//      of one-character terminals.
+//      Methods for "s" with characters given by char[], compared
+//      by 'Source.matches'. Methods for "s" given by String
+//      compare without creating substring.
+//      Characters are read directly from the array returned by
+//      'Source.chars', if there is one, instead of calling 'Source.at'.
+//      Methods for terminals of parsers generated with option -B,
+//      that consume UTF-8 characters from input of bytes.
+//      Two-pass parsing ('setTwoPass'): the first pass does not
+//      register failures ('track' is false); if it fails, 'retry'
+//      prepares the second pass that registers them.
+//      The second pass does not call semantic actions ('semAct');
+//      boolean actions return results saved by the first ('semAnd'),
+//      and error information set by actions in the first pass
+//      is set again after them ('semDone'). Deferred actions
+//      left by the first pass are executed by 'closeParser'.
+//      'begin' with ids of name and diagnostic name in table 'diags',
+//      kept in the Phrase; 'reject', 'rejectPred' and 'endGrow'
+//      use the ids instead of looking up and comparing Strings.
+//      Service methods 'beginInl' and 'endInl'
+//      for subexpressions inlined by option -I of Generate.
+//      'is' with StringSet: 'b' that is a choice of string literals
+//      is replaced by lookup of the text matched by 'a'.
+//      'next' with Trie for a choice of string literals.
 //
 //=========================================================================
 
 package mouse.runtime;
 
 import mouse.runtime.Source;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Stack;
 import java.util.Vector;
 
@@ -99,6 +145,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //  Input
   //-------------------------------------------------------------------
   Source source;                    // Source of text to parse
+  char[] chars;                     // Its characters, or null
   int endpos;                       // Position after the end of text
   int pos;                          // Current position in the text
 
@@ -124,6 +171,75 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   Stack<Phrase> ascents;
 
+  //-------------------------------------------------------------------
+  //  Terminal elision: if true, consumed terminals are kept in rhs
+  //  of current Phrase as spans. Their Phrases are created only
+  //  if requested by 'rhs(i)'. Set by generated parser.
+  //-------------------------------------------------------------------
+  protected boolean elide = false;
+
+  //-------------------------------------------------------------------
+  //  Table of diagnostic names.
+  //-------------------------------------------------------------------
+  DiagNames diags = new DiagNames(new String[0]);
+
+  //-------------------------------------------------------------------
+  //  Recycling. If 'recycle' is true, Phrases created by a parse
+  //  are kept in 'pool' and reused by the next parse, after
+  //  the Phrases from previous parse are no longer needed.
+  //  The first 'poolUsed' Phrases are used by current parse.
+  //  At most POOL_MAX Phrases are kept; beyond that,
+  //  new Phrases are allocated as usual.
+  //-------------------------------------------------------------------
+  static final int POOL_MAX = 1<<16;
+  boolean recycle = false;
+  Phrase[] pool = null;
+  int poolSize = 0;
+  int poolUsed = 0;
+
+  //-------------------------------------------------------------------
+  //  Number of current parse, incremented by 'init'.
+  //  Used to recognize data left by previous parses.
+  //-------------------------------------------------------------------
+  int epoch = 0;
+
+  //-------------------------------------------------------------------
+  //  Two-pass parsing. If 'twoPass' is true, each parse is first
+  //  done without registering failures: 'track' is false.
+  //  If that parse fails, 'retry' initializes the parser again,
+  //  with 'track' true, for the parse that produces error message.
+  //  That parse ('replay' true) does not call semantic actions.
+  //  It takes the results of boolean actions from 'ands',
+  //  where the first parse saved them; 'andCnt' is the next index.
+  //-------------------------------------------------------------------
+  boolean twoPass = false;
+  boolean track = true;
+  boolean replay = false;
+  BitSet ands = new BitSet();
+  int andCnt = 0;
+
+  //-------------------------------------------------------------------
+  //  Error information set in lhs by semantic actions of the first
+  //  parse ('errClear' or 'errAdd'), to be set again by the second
+  //  parse in place of the same actions. The actions are numbered
+  //  by 'actCnt'. Entry in 'errs' consists of the action's number,
+  //  high-water mark, number of ids, and the ids. Top of 'errs'
+  //  is at 'errTop'; the entry to be used next is at 'errNext'.
+  //-------------------------------------------------------------------
+  int actCnt = 0;
+  int[] errs = new int[16];
+  int errTop = 0;
+  int errNext = 0;
+
+  //-------------------------------------------------------------------
+  //  Stack of inlined subexpressions being processed.
+  //  Entry consists of three elements saved by 'beginInl':
+  //  start position, size of rhs and number of deferred actions.
+  //  Top of the stack is at 'inlTop'.
+  //-------------------------------------------------------------------
+  int inlTop = 0;
+  int[] inl = new int[48];
+
   //-------------------------------------------------------------------
   //  Empty semantic action.
   //-------------------------------------------------------------------
@@ -141,10 +257,23 @@ public class ParserBase implements mouse.runtime.CurrentRule
   public void init(Source src)
     {
       source = src;
+      chars = src.chars();
       pos = 0;
       endpos = source.end();
-      current = new Phrase("","",0,source); // Dummy bottom of parse stack
-      ascents = new Stack<Phrase>();
+      epoch++;
+      track = !twoPass;
+      replay = false;
+      andCnt = 0;
+      actCnt = 0;
+      errTop = 0;
+      errNext = 0;
+      inlTop = 0;
+      poolUsed = 0;
+      current = newPhrase("","",0);      // Dummy bottom of parse stack
+      if (recycle && ascents!=null)
+        ascents.clear();
+      else
+        ascents = new Stack<Phrase>();
     }
 
   //-------------------------------------------------------------------
@@ -154,15 +283,15 @@ public class ParserBase implements mouse.runtime.CurrentRule
     { return current; }
 
   public Phrase rhs(int i)
-    { return current.rhs.elementAt(i); }
+    { return current.rhsAt(i); }
 
   public int rhsSize()
-    { return current.rhs.size(); }
+    { return current.rhsSize(); }
 
   public String rhsText(int i,int j)
     {
       if (j<=i) return "";
-      return source.at(rhs(i).start,rhs(j-1).end);
+      return source.at(current.rhsStart(i),current.rhsEnd(j-1));
     }
 
   //-------------------------------------------------------------------
@@ -174,6 +303,45 @@ public class ParserBase implements mouse.runtime.CurrentRule
       if (sem!=null) sem.trace = trace;
     }
 
+  //-------------------------------------------------------------------
+  //  Set recycling mode. In this mode, Phrases and other data
+  //  created by a parse are reused by the next parse on the same
+  //  parser. Semantic procedures must not keep references
+  //  to Phrases after the end of parse.
+  //-------------------------------------------------------------------
+  public void setRecycle(boolean r)
+    {
+      recycle = r;
+      pool = r? new Phrase[256] : null;
+      poolSize = 0;
+      poolUsed = 0;
+    }
+
+  //-------------------------------------------------------------------
+  //  Set two-pass mode. In this mode, the parse is first done
+  //  without registering failures, and is repeated with them
+  //  only if it fails. Semantic actions are called only in the
+  //  first pass, where they must not read error information
+  //  of Phrases ('errMsg'). Information that they set by 'errClear'
+  //  or 'errAdd' is set again in the second pass, so the error
+  //  message is the same as in the one-pass mode.
+  //-------------------------------------------------------------------
+  public void setTwoPass(boolean t)
+    { twoPass = t; }
+
+  //-------------------------------------------------------------------
+  //  Preset table of diagnostic names with names of terminals
+  //  in the order of ids assigned by the generator.
+  //-------------------------------------------------------------------
+  protected void setDiags(String[] list)
+    { diags = new DiagNames(list); }
+
+  //-------------------------------------------------------------------
+  //  Use table of diagnostic names shared with other parsers.
+  //-------------------------------------------------------------------
+  protected void setDiags(DiagNames d)
+    { diags = d; }
+
   //-------------------------------------------------------------------
   //  Close parser: print messages (if not caught otherwise).
   //-------------------------------------------------------------------
@@ -184,6 +352,95 @@ public class ParserBase implements mouse.runtime.CurrentRule
         System.out.println(current.errMsg());
     }
 
+  //-------------------------------------------------------------------
+  //  Called by 'parse' after failure. If the parse was the first
+  //  pass of two-pass parsing, initialize the parser for the second
+  //  pass and return true. Otherwise return false.
+  //-------------------------------------------------------------------
+  protected boolean retry(Source src)
+    {
+      if (track) return false;
+      Vector<FuncVV> acts = current.defAct; // Deferred by first pass
+      int n = errTop;                  // Error info saved by first pass
+      init(src);
+      current.defAct = acts;
+      errTop = n;
+      track = true;
+      replay = true;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Called before semantic action: false if the action is not
+  //  to be called, that is, in the second pass of two-pass parsing.
+  //-------------------------------------------------------------------
+  protected boolean semAct()
+    {
+      actCnt++;
+      return !replay;
+    }
+
+  //-------------------------------------------------------------------
+  //  Called after semantic action, or in its place in the second
+  //  pass of two-pass parsing. In the first pass, save error
+  //  information that the action set in lhs. In the second pass,
+  //  set in lhs the information saved for the action.
+  //-------------------------------------------------------------------
+  protected void semDone()
+    {
+      if (!twoPass) return;
+      if (!track)
+      {
+        Phrase p = actLhs();
+        if (p==null || !p.errSet) return;
+        p.errSet = false;
+        int n = 3 + p.hwmCnt;
+        if (errTop+n>errs.length)
+          errs = Arrays.copyOf(errs,Math.max(2*errs.length,errTop+n));
+        errs[errTop] = actCnt;
+        errs[errTop+1] = p.hwm;
+        errs[errTop+2] = p.hwmCnt;
+        if (p.hwmCnt>0)
+          System.arraycopy(p.hwmExp,0,errs,errTop+3,p.hwmCnt);
+        errTop += n;
+      }
+      else if (replay && errNext<errTop && errs[errNext]==actCnt)
+      {
+        int n = errs[errNext+2];
+        int from = errNext+3;
+        lhs().hwmCopyFrom(errs[errNext+1],Arrays.copyOfRange(errs,from,from+n),n);
+        errNext = from + n;
+      }
+    }
+
+  //-------------------------------------------------------------------
+  //  Return result 'b' of boolean action. In the first pass
+  //  of two-pass parsing, save it for the second pass.
+  //-------------------------------------------------------------------
+  protected boolean semAnd(boolean b)
+    {
+      if (!track) ands.set(andCnt++,b);
+      semDone();
+      return b;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return result of boolean action saved by the first pass,
+  //  instead of calling the action in the second pass.
+  //-------------------------------------------------------------------
+  protected boolean semAnd()
+    {
+      boolean b = ands.get(andCnt++);
+      semDone();
+      return b;
+    }
+
+  //-------------------------------------------------------------------
+  //  Phrase that semantic action could have obtained by 'lhs()'.
+  //-------------------------------------------------------------------
+  Phrase actLhs()
+    { return current; }
+
   //=====================================================================
   //
   //  Service methods called from parsing procedures
@@ -193,8 +450,18 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //  Initialize processing of a nonterminal:
   //  create new Phrase and push it on compile stack.
   //-------------------------------------------------------------------
+  protected void begin(int name,int diag)
+    { push(newPhrase(name,diag,pos)); }
+
+  protected void begin(int name)          // Sets diag = name
+    { begin(name,name); }
+
+  //-------------------------------------------------------------------
+  //  The same with names given as Strings,
+  //  for parsers generated by earlier versions.
+  //-------------------------------------------------------------------
   protected void begin(String name,String diag)
-    { push(new Phrase(name,diag,pos,source)); }
+    { begin(diags.id(name),diags.id(diag)); }
 
   protected void begin(String name)       // Sets diag = name
     { begin(name,name); }
@@ -207,12 +474,12 @@ public class ParserBase implements mouse.runtime.CurrentRule
       Phrase p = pop();                // Pop the finishing Phrase
                                        // Finalize p:
       p.success = true;                //   Indicate p successful
-      p.rhs.removeAllElements();       //   Discard rhs of p
+      p.rhsDiscard();                  //   Discard rhs of p
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
-      current.rhs.add(p);              //   Add p to the rhs
+      current.rhsAdd(p);               //   Add p to the rhs
       current.hwmUpdFrom(p);           //   Update failure history
-      current.defAct.addAll(p.defAct); //   Propagate deferred actions
+      current.actAddFrom(p);           //   Propagate deferred actions
       return true;
     }
 
@@ -226,9 +493,9 @@ public class ParserBase implements mouse.runtime.CurrentRule
       p.success = true;                //   Indicate p successful
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
-      current.rhs.addAll(p.rhs);       //   Append p's rhs to the rhs
+      current.rhsAddAll(p);            //   Append p's rhs to the rhs
       current.hwmUpdFrom(p);           //   Update failure history
-      current.defAct.addAll(p.defAct); //   Propagate deferred actions
+      current.actAddFrom(p);           //   Propagate deferred actions
       return true;
     }
 
@@ -242,7 +509,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
                                        // Finalize p:
       p.end = pos;                     //   Reset end of text
       p.success = true;                //   Indicate p successful
-      p.rhs = null;                    //   Discard rhs of p
+      p.rhsDiscard();                  //   Discard rhs of p
       p.hwmClear();                    //   Remove failure history
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
@@ -259,13 +526,14 @@ public class ParserBase implements mouse.runtime.CurrentRule
                                        // Finalize p:
       p.end = pos;                     //   Reset end of text
       p.success = false;               //   Indicate p failed
-      p.rhs = null;                    //   Discard rhs of p
+      p.rhsDiscard();                  //   Discard rhs of p
                                        //   Update error info
-      if (pos<p.hwm);                  //     There was later failure
+      if (!track);                     //     Not registered
+      else if (pos<p.hwm);             //     There was later failure
       else if(p.hwm==-2) p.hwm = -1;   //     Ignore indicator was set
       else if (p.hwm==-1 ||            //     If no error yet..
                p.name.charAt(0)!='$')  //     ..or this is not ascent
-        p.hwmSet(p.diag,p.start);      //     ..register failure of p
+        p.hwmSet(p.diagId,p.start);    // ..register failure of p
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
       current.hwmUpdFrom(p);           //   Update failure history
@@ -282,7 +550,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
                                        // Finalize p:
       p.end = pos;                     //   Reset end of text
       p.success = false;               //   Indicate p failed
-      p.rhs = null;                    //   Discard rhs of p
+      p.rhsDiscard();                  //   Discard rhs of p
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
       current.hwmUpdFrom(p);           //   Update failure history
@@ -299,14 +567,70 @@ public class ParserBase implements mouse.runtime.CurrentRule
                                        // Finalize p:
       p.end = pos;                     //   Reset end of text
       p.success = false;               //   Indicate p failed
-      p.rhs = null;                    //   Discard rhs of p
-      p.hwmSet(p.diag,pos);            //   Register 'xxx (not) expected'
+      p.rhsDiscard();                  //   Discard rhs of p
+      if (track)                       //   Register 'xxx (not) expected'
+        p.hwmSet(p.diagId,pos);
                                        // Update parent Phrase:
       current.end = pos;               //   End of text
       current.hwmUpdFrom(p);           //   Update failure history
       return false;
     }
 
+  //=====================================================================
+  //
+  //  Service methods for subexpressions inlined by option -I.
+  //  Inlined subexpression does not have its own Phrase:
+  //  it adds its rhs, deferred actions and failures directly
+  //  to the current Phrase. It is generated as
+  //  'endInl(beginInl() && ...)'. In case of failure, the position,
+  //  rhs and deferred actions are restored as they were
+  //  at 'beginInl'. Failures stay registered, as they would be
+  //  after merging failure history of the subexpression.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Begin inlined subexpression. (Returns true for use
+  //  in the generated boolean expression.)
+  //-------------------------------------------------------------------
+  protected boolean beginInl()
+    {
+      pushInl(current.rhsSize(),current.actSize());
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  End inlined subexpression: accept if 'ok', otherwise reject.
+  //-------------------------------------------------------------------
+  protected boolean endInl(boolean ok)
+    {
+      inlTop -= 3;                     // Pop the entry
+      if (ok)
+      {
+        current.end = pos;             // End of text
+        return true;
+      }
+      pos = inl[inlTop];               // Do not consume input
+      current.end = pos;               // End of text
+                                       // Discard added rhs and actions:
+      current.rhsTruncate(inl[inlTop+1]);
+      current.actTruncate(inl[inlTop+2]);
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Push entry with current position, rhs size 'r'
+  //  and number of actions 'a'.
+  //-------------------------------------------------------------------
+  void pushInl(int r, int a)
+    {
+      if (inlTop+3>inl.length)
+        inl = Arrays.copyOf(inl,2*inl.length);
+      inl[inlTop] = pos;
+      inl[inlTop+1] = r;
+      inl[inlTop+2] = a;
+      inlTop += 3;
+    }
+
   //=====================================================================
   //
   //  Service method for operation 'a:b' and a:!b'
@@ -319,7 +643,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
       int saveend = pos;
       Phrase p = current;                // Save current
 
-      current = new Phrase("dummy","dummy",pos,source);
+      current = newPhrase("dummy","dummy",pos);
       pos = savestart;
       endpos = saveend;
 
@@ -330,7 +654,24 @@ public class ParserBase implements mouse.runtime.CurrentRule
       current = p;
 
       if (match==ok) return true;
-      p.hwmSet("is expression",savestart);
+      if (track)
+        p.hwmSet(diags.id("is expression"),savestart);
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  The same where 'b' is a choice of string literals.
+  //  'b' matches the text consumed by 'a' if the text is in 'set'.
+  //  (The generator omits from 'set' the literals that are never
+  //  matched because an earlier alternative is their prefix.)
+  //-------------------------------------------------------------------
+  protected boolean is(boolean ok, FuncVB a,StringSet set)
+    {
+      int savestart = pos;
+      if (!a.exec()) return false;
+      if (set.contains(source,chars,savestart,pos)==ok) return true;
+      if (track)
+        current.hwmSet(diags.id("is expression"),savestart);
       return false;
     }
 
@@ -357,10 +698,10 @@ public class ParserBase implements mouse.runtime.CurrentRule
   protected boolean endGrow()
     {
       // If current Phrase is not for this entry
-      if (!current.diag.equals(ascents.peek().name)) return false;
+      if (current.diagId!=ascents.peek().id) return false;
 
-      // If no semantics
-      if (sem==null) return true;
+      // If no semantics, or second pass of two-pass parsing
+      if (sem==null || replay) return true;
 
       // Otherwise compute semantics of ascent
       ascentSemantics();
@@ -375,7 +716,528 @@ public class ParserBase implements mouse.runtime.CurrentRule
 
   //=====================================================================
   //
-  //  Parsing methods for terminals
+  //  Service methods for selection of alternatives
+  //  and guards by the next character
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Next character, or -1 at end of text.
+  //-------------------------------------------------------------------
+  protected int peek()
+    { return pos<endpos? at(pos) : -1; }
+
+  //-------------------------------------------------------------------
+  //  Is the next character in 'set'? False at end of text.
+  //-------------------------------------------------------------------
+  protected boolean peekIn(CharSet set)
+    { return pos<endpos && set.contains(at(pos)); }
+
+  //-------------------------------------------------------------------
+  //  Register failure of expression with diagnostic name 'e',
+  //  not tried because it can not start with the next character.
+  //  Return false, as would the expression.
+  //-------------------------------------------------------------------
+  protected boolean skip(int e)
+    { return fail(e); }
+
+  //=====================================================================
+  //
+  //  Parsing methods for terminals.
+  //  Parameter 'e' is id of diagnostic name of the expression,
+  //  registered in case of failure.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Execute expression 'c'
+  //-------------------------------------------------------------------
+  protected boolean next(char ch,int e)
+    {
+      if (pos<endpos && at(pos)==ch) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^'c'
+  //-------------------------------------------------------------------
+  protected boolean nextNot(char ch,int e)
+    {
+      if (pos<endpos && at(pos)!=ch) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &'c', !^'c'
+  //-------------------------------------------------------------------
+  protected boolean ahead(char ch,int e)
+    {
+      if (pos<endpos && at(pos)==ch) return true;
+      else return fail(e);
+    }
+
+  protected boolean aheadNotNot(char ch,int e)  // temporary
+    { return ahead(ch,e); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !'c', &^'c'
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(char ch,int e)
+    {
+      if (pos<endpos && at(pos)==ch) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression "s"
+  //-------------------------------------------------------------------
+  protected boolean next(String s,int e)
+    {
+      int lg = s.length();
+      if (pos+lg<=endpos && matches(s)) return consume(lg);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &"s"
+  //-------------------------------------------------------------------
+  protected boolean ahead(String s,int e)
+    {
+      int lg = s.length();
+      if (pos+lg<=endpos && matches(s)) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !"s"
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(String s,int e)
+    {
+      int lg = s.length();
+      if (pos+lg<=endpos && matches(s)) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression "s" with characters of s in 's'
+  //-------------------------------------------------------------------
+  protected boolean next(char[] s,int e)
+    {
+      int lg = s.length;
+      if (pos+lg<=endpos && matches(s)) return consume(lg);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &"s" with characters of s in 's'
+  //-------------------------------------------------------------------
+  protected boolean ahead(char[] s,int e)
+    {
+      if (pos+s.length<=endpos && matches(s)) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !"s" with characters of s in 's'
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(char[] s,int e)
+    {
+      if (pos+s.length<=endpos && matches(s)) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression "s1" / "s2" / ... with the literals in 't'.
+  //  Failures of alternatives tried before the matching one
+  //  are registered as if they were tried one by one.
+  //-------------------------------------------------------------------
+  protected boolean next(Trie t)
+    {
+      int a = t.match(source,chars,pos,endpos);
+      int n = a<0? t.size() : a;
+      for (int i=0;i<n;i++)
+        fail(t.id(i));
+      if (a<0) return false;
+      return consume(t.length(a));
+    }
+
+  //-------------------------------------------------------------------
+  //  Are the characters at 'pos' those of 's'?
+  //-------------------------------------------------------------------
+  private boolean matches(String s)
+    {
+      for (int i=0;i<s.length();i++)
+        if (at(pos+i)!=s.charAt(i)) return false;
+      return true;
+    }
+
+  private boolean matches(char[] s)
+    {
+      if (chars==null) return source.matches(pos,s);
+      return Arrays.equals(chars,pos,pos+s.length,s,0,s.length);
+    }
+
+  //-------------------------------------------------------------------
+  //  Character at position p.
+  //-------------------------------------------------------------------
+  private char at(int p)
+    { return chars!=null? chars[p] : source.at(p); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression [s]
+  //-------------------------------------------------------------------
+  protected boolean nextIn(String s,int e)
+    {
+      if (pos<endpos && s.indexOf(at(pos))>=0) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^[s]
+  //-------------------------------------------------------------------
+  protected boolean nextNotIn(String s,int e)
+    {
+      if (pos<endpos && s.indexOf(at(pos))<0) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[s], !^[s]
+  //-------------------------------------------------------------------
+  protected boolean aheadIn(String s,int e)
+    {
+      if (pos<endpos && s.indexOf(at(pos))>=0) return true;
+      else return fail(e);
+    }
+
+  protected boolean aheadNotNotIn(String s,int e) // temporary
+    { return aheadIn(s,e); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![s], &^[s]
+  //-------------------------------------------------------------------
+  protected boolean aheadNotIn(String s,int e)
+    {
+      if (pos<endpos && s.indexOf(at(pos))>=0) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression [a-z]
+  //-------------------------------------------------------------------
+  protected boolean nextIn(char a, char z, int e)
+    {
+      if (pos<endpos)
+      {
+        char c = at(pos);
+        if (c>=a && c<=z) return consume(1);
+      }
+      return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[a-z]
+  //-------------------------------------------------------------------
+  protected boolean aheadIn(char a, char z, int e)
+    {
+      if (pos<endpos)
+      {
+        char c = at(pos);
+        if (c>=a && c<=z) return true;
+      }
+      return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![a-z]
+  //-------------------------------------------------------------------
+  protected boolean aheadNotIn(char a, char z, int e)
+    {
+      if (pos<endpos)
+      {
+        char c = at(pos);
+        if (c>=a && c<=z) return fail(e);
+      }
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression [s] or [a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean nextIn(CharSet set,int e)
+    {
+      if (pos<endpos && set.contains(at(pos))) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^[s] with characters of s in 'set'
+  //-------------------------------------------------------------------
+  protected boolean nextNotIn(CharSet set,int e)
+    {
+      if (pos<endpos && !set.contains(at(pos))) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[s], !^[s], &[a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadIn(CharSet set,int e)
+    {
+      if (pos<endpos && set.contains(at(pos))) return true;
+      else return fail(e);
+    }
+
+  protected boolean aheadNotNotIn(CharSet set,int e) // temporary
+    { return aheadIn(set,e); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![s], &^[s], ![a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadNotIn(CharSet set,int e)
+    {
+      if (pos<endpos && set.contains(at(pos))) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression _
+  //-------------------------------------------------------------------
+  protected boolean next(int e)
+    {
+      if (pos<endpos) return consume(1);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &_
+  //-------------------------------------------------------------------
+  protected boolean ahead(int e)
+    {
+      if (pos<endpos) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !_
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(int e)
+    {
+      if (pos<endpos) return fail(e);
+      else return true;
+    }
+
+  //=====================================================================
+  //
+  //  Parsing methods for repetitions of terminals that consume
+  //  one character, such as [s], ^[s], [a-z], 'c' or _.
+  //  Parameters 'set' specify characters consumed by the terminals,
+  //  and 'e' are ids of their diagnostic names.
+  //  The characters are scanned in one loop and consumed
+  //  as one terminal. Failures are registered as they would be
+  //  by repeated calls to the terminal methods.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Execute expression x*
+  //-------------------------------------------------------------------
+  protected boolean nextStar(CharSet set,int e)
+    {
+      scan(set,e);
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression x+
+  //-------------------------------------------------------------------
+  protected boolean nextPlus(CharSet set,int e)
+    { return scan(set,e)>0; }
+
+  //-------------------------------------------------------------------
+  //  Execute expression x*+y (x and y given by 'xSet','xe','ySet','ye')
+  //-------------------------------------------------------------------
+  protected boolean nextUntil(CharSet xSet,int xe,CharSet ySet,int ye)
+    {
+      int start = pos;
+      int p = pos;
+      while (p<endpos)
+      {
+        char c = at(p);
+        if (ySet.contains(c) || !xSet.contains(c)) break;
+        p++;
+      }
+      if (p>start)
+      {
+        pos = p-1;                     // Last failure of y before p
+        fail(ye);
+        pos = start;
+        consume(p-start);
+      }
+      if (pos<endpos && ySet.contains(at(pos)))
+        return consume(1);
+      fail(ye);
+      return fail(xe);
+    }
+
+  //-------------------------------------------------------------------
+  //  Consume characters in 'set', register failure 'e' after them,
+  //  and return their number.
+  //-------------------------------------------------------------------
+  private int scan(CharSet set,int e)
+    {
+      int p = pos;
+      while (p<endpos && set.contains(at(p))) p++;
+      int n = p-pos;
+      if (n>0) consume(n);
+      fail(e);
+      return n;
+    }
+
+  //=====================================================================
+  //
+  //  Parsing methods for parsers generated with option -B.
+  //  The input is a sequence of bytes in UTF-8, such as from
+  //  SourceBytes, with each byte presented as a character 0-255.
+  //  These methods are used for terminals _, [s], ^[s] and [a-z]
+  //  that can match a character outside ASCII: they consume
+  //  all bytes of one UTF-8 character. Characters in 'set' are
+  //  those of the grammar; a character beyond U+FFFF is not in any set.
+  //  Ill-formed bytes are not a character, and fail all terminals.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Execute expression [s] or [a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean nextUtf8In(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && set.contains(u>>3)) return consume(u&7);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^[s] with characters of s in 'set'
+  //-------------------------------------------------------------------
+  protected boolean nextUtf8NotIn(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && !set.contains(u>>3)) return consume(u&7);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[s], &[a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadUtf8In(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && set.contains(u>>3)) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &^[s] with characters of s in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadUtf8NotIn(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && !set.contains(u>>3)) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![s], ![a-z] with characters in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadNotUtf8In(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && set.contains(u>>3)) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !^[s] with characters of s in 'set'
+  //-------------------------------------------------------------------
+  protected boolean aheadNotUtf8NotIn(CharSet set,int e)
+    {
+      int u = utf8(pos);
+      if (u>=0 && !set.contains(u>>3)) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression _
+  //-------------------------------------------------------------------
+  protected boolean nextUtf8(int e)
+    {
+      int u = utf8(pos);
+      if (u>=0) return consume(u&7);
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &_
+  //-------------------------------------------------------------------
+  protected boolean aheadUtf8(int e)
+    {
+      if (utf8(pos)>=0) return true;
+      else return fail(e);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !_
+  //-------------------------------------------------------------------
+  protected boolean aheadNotUtf8(int e)
+    {
+      if (utf8(pos)>=0) return fail(e);
+      else return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  UTF-8 character at position p. Returns its code point
+  //  shifted left by 3, plus its number of bytes;
+  //  or -1 if the bytes at p are not a well-formed character.
+  //-------------------------------------------------------------------
+  private int utf8(int p)
+    {
+      if (p>=endpos) return -1;
+      int b = at(p);
+      if (b<0x80) return b<<3 | 1;
+
+      int lg;                          // Number of bytes
+      int lo = 0x80;                   // Range for the second byte
+      int hi = 0xbf;
+      if (b<0xc2) return -1;
+      else if (b<0xe0) lg = 2;
+      else if (b<0xf0)
+      {
+        lg = 3;
+        if (b==0xe0) lo = 0xa0;        // Not overlong
+        if (b==0xed) hi = 0x9f;        // Not surrogate
+      }
+      else if (b<0xf5)
+      {
+        lg = 4;
+        if (b==0xf0) lo = 0x90;        // Not overlong
+        if (b==0xf4) hi = 0x8f;        // Not above U+10FFFF
+      }
+      else return -1;
+      if (p+lg>endpos) return -1;
+
+      int c = at(p+1);
+      if (c<lo || c>hi) return -1;
+      int cp = (b & 0xff>>lg+1)<<6 | c&0x3f;
+      for (int i=2;i<lg;i++)
+      {
+        c = at(p+i);
+        if ((c&0xc0)!=0x80) return -1;
+        cp = cp<<6 | c&0x3f;
+      }
+      return cp<<3 | lg;
+    }
+
+  //=====================================================================
+  //
+  //  Parsing methods for terminals called by parsers generated
+  //  by earlier versions. Diagnostic name is constructed on failure.
   //
   //=====================================================================
   //-------------------------------------------------------------------
@@ -383,7 +1245,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean next(char ch)
     {
-      if (pos<endpos && source.at(pos)==ch) return consume(1);
+      if (pos<endpos && at(pos)==ch) return consume(1);
       else return fail("'" + ch + "'");
     }
 
@@ -392,7 +1254,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean nextNot(char ch)
     {
-      if (pos<endpos && source.at(pos)!=ch) return consume(1);
+      if (pos<endpos && at(pos)!=ch) return consume(1);
       else return fail("not '" + ch + "'");
     }
 
@@ -401,7 +1263,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean ahead(char ch)
     {
-      if (pos<endpos && source.at(pos)==ch) return true;
+      if (pos<endpos && at(pos)==ch) return true;
       else return fail("'" + ch + "'");
     }
 
@@ -413,7 +1275,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNot(char ch)
     {
-      if (pos<endpos && source.at(pos)==ch) return fail("not '" + ch + "'");
+      if (pos<endpos && at(pos)==ch) return fail("not '" + ch + "'");
       else return true;
     }
 
@@ -423,7 +1285,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   protected boolean next(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return consume(lg);
+      if (pos+lg<=endpos && matches(s)) return consume(lg);
       else return fail("'" + s + "'");
     }
 
@@ -433,7 +1295,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   protected boolean ahead(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return true;
+      if (pos+lg<=endpos && matches(s)) return true;
       else return fail("'" + s + "'");
     }
 
@@ -443,7 +1305,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   protected boolean aheadNot(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return fail("not '" + s + "'");
+      if (pos+lg<=endpos && matches(s)) return fail("not '" + s + "'");
       else return true;
     }
 
@@ -452,7 +1314,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean nextIn(String s)
     {
-      if (pos<endpos && s.indexOf(source.at(pos))>=0) return consume(1);
+      if (pos<endpos && s.indexOf(at(pos))>=0) return consume(1);
       else return fail("[" + s + "]");
     }
 
@@ -461,7 +1323,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean nextNotIn(String s)
     {
-      if (pos<endpos && s.indexOf(source.at(pos))<0) return consume(1);
+      if (pos<endpos && s.indexOf(at(pos))<0) return consume(1);
       else return fail("not [" + s + "]");
     }
 
@@ -470,7 +1332,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadIn(String s)
     {
-      if (pos<endpos && s.indexOf(source.at(pos))>=0) return true;
+      if (pos<endpos && s.indexOf(at(pos))>=0) return true;
       else return fail("[" + s + "]");
     }
 
@@ -482,7 +1344,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNotIn(String s)
     {
-      if (pos<endpos && s.indexOf(source.at(pos))>=0) return fail("not [" + s + "]");
+      if (pos<endpos && s.indexOf(at(pos))>=0) return fail("not [" + s + "]");
       else return true;
     }
 
@@ -491,7 +1353,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean nextIn(char a, char z)
     {
-      if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
+      if (pos<endpos && at(pos)>=a && at(pos)<=z)
         return consume(1);
       else return fail("[" + a + "-" + z + "]");
     }
@@ -501,7 +1363,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadIn(char a, char z)
     {
-      if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
+      if (pos<endpos && at(pos)>=a && at(pos)<=z)
         return true;
       else return fail("[" + a + "-" + z + "]");
     }
@@ -511,7 +1373,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNotIn(char a, char z)
     {
-      if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
+      if (pos<endpos && at(pos)>=a && at(pos)<=z)
         return fail("not [" + a + "-" + z + "]");
       else return true;
     }
@@ -545,12 +1407,17 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   //  Consume terminal
   //-------------------------------------------------------------------
-  private boolean consume(int n)
+  boolean consume(int n)
     {
-      Phrase p = new Phrase("","",pos,source);
+      if (elide)
+        current.rhsAddSpan(pos,pos+n);
+      else
+      {
+        Phrase p = newPhrase("","",pos);
+        p.end = pos+n;
+        current.rhsAdd(p);
+      }
       pos += n;
-      p.end = pos;
-      current.rhs.add(p);
       current.end = pos;
       return true;
     }
@@ -558,12 +1425,19 @@ public class ParserBase implements mouse.runtime.CurrentRule
   //-------------------------------------------------------------------
   //  Fail
   //-------------------------------------------------------------------
-  private boolean fail(String msg)
+  boolean fail(int e)
     {
-      current.hwmUpd(msg,pos);
+      if (track)
+        current.hwmUpd(e,pos);
       return false;
     }
 
+  private boolean fail(String msg)
+    {
+      if (!track) return false;
+      return fail(diags.id(msg));
+    }
+
   //=====================================================================
   //
   //  Compiler stack operations
@@ -591,6 +1465,45 @@ public class ParserBase implements mouse.runtime.CurrentRule
       return p;
     }
 
+  //-------------------------------------------------------------------
+  //  Create new Phrase, or take it from the pool if recycling.
+  //-------------------------------------------------------------------
+  Phrase newPhrase(String name,String diag,int start)
+    {
+      if (!recycle) return new Phrase(name,diag,start,source,diags);
+      Phrase p;
+      if (poolUsed<poolSize)
+      {
+        p = pool[poolUsed++];
+        p.reset(name,diag,start,source,diags);
+        return p;
+      }
+      p = new Phrase(name,diag,start,source,diags);
+      if (poolSize==POOL_MAX) return p;
+      if (poolSize==pool.length)
+      {
+        Phrase[] n = new Phrase[2*poolSize];
+        System.arraycopy(pool,0,n,0,poolSize);
+        pool = n;
+      }
+      pool[poolSize++] = p;
+      poolUsed = poolSize;
+      return p;
+    }
+
+  //-------------------------------------------------------------------
+  //  Create new Phrase with name 'name' and diagnostic name 'diag'
+  //  given by their ids in 'diags'; id -1 stands for empty name.
+  //-------------------------------------------------------------------
+  Phrase newPhrase(int name,int diag,int start)
+    {
+      Phrase p = newPhrase(name<0? "" : diags.name(name),
+                           diag<0? "" : diags.name(diag),start);
+      p.id = name;
+      p.diagId = diag;
+      return p;
+    }
+
   //=====================================================================
   //
   //  Compute ascent semantics
@@ -619,7 +1532,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
       // Its rhs represents the text consumed by seed S.
       //---------------------------------------------------------------
       if ($R==E)
-        return $P.rhs;
+        return $P.rhsAll();
 
       //---------------------------------------------------------------
       // $P is not lowest in the ascent stack.
@@ -630,7 +1543,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
         // and the rhs of $P represents the rest.
         // Construct Vector p representing all of P.
         Vector<Phrase> p = new Vector<Phrase>(descend($R,E));
-        p.addAll($P.rhs);
+        p.addAll($P.rhsAll());
 
         // If P is not a Rule (no semantic actions)
         // return the constructed Vector.
@@ -640,7 +1553,7 @@ public class ParserBase implements mouse.runtime.CurrentRule
         else
         {
           // Imitate lhs + rhs on top of stack
-          push(new Phrase($P.diag,$P.diag,p.firstElement().start,source));
+          push(newPhrase($P.diagId,$P.diagId,p.firstElement().start));
           current.rhs = p;
           current.end = p.lastElement().end;
 
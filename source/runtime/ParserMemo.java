@@ -32,6 +32,16 @@
 //      The 'reuse' services rewritten to use new methods of 'Phrase'.
 //    Version 2.0
 //      Added comments.
+//    Version 2.4
+//      Added full memoization ('cacheSize' = FULL): each Cache keeps
+//      a table of results indexed by input position.
+//      Do not save or reuse results while 'is' has shortened the input.
+//      Added memo window for full memoization ('setWindow').
+//      'save' returns the Phrase it evicted.
+//      In recycling mode, Cache arrays are kept between parses
+//      and their entries are validated by epoch.
+//      Static 'checkMemo' and 'checkWindow' for re-entrant parser.
+//      'saved' with ids of names.
 //
 //=========================================================================
 
@@ -52,6 +62,29 @@ public class ParserMemo extends ParserBase
   //-------------------------------------------------------------------
   int cacheSize = 0;
 
+  //-------------------------------------------------------------------
+  //  Cache size requesting full memoization: every result is kept
+  //  until the end of parse, in a table indexed by input position.
+  //-------------------------------------------------------------------
+  public static final int FULL = Integer.MAX_VALUE;
+
+  //-------------------------------------------------------------------
+  //  Memo window for full memoization, 0 if none.
+  //  With window w, the tables are rings of at least w+1 entries,
+  //  so that results for positions less than w characters behind
+  //  the farthest saved position are retained, and older ones
+  //  are evicted when their entry is needed.
+  //-------------------------------------------------------------------
+  int window = 0;
+
+  //-------------------------------------------------------------------
+  //  Size of tables for full memoization and mask to obtain
+  //  table index from position. (The mask is -1 if the table
+  //  has room for each position.) Set by 'init'.
+  //-------------------------------------------------------------------
+  int tableSize;
+  int tableMask;
+
   //-------------------------------------------------------------------
   //  Phrase to reuse.
   //-------------------------------------------------------------------
@@ -74,19 +107,52 @@ public class ParserMemo extends ParserBase
   public void init(Source src)
     {
       super.init(src);
+      tableSize = endpos+1;
+      tableMask = -1;
+      if (window>0)
+      {
+        int size = Integer.highestOneBit(window)<<1;
+        if (size>0 && size<tableSize)
+        {
+          tableSize = size;
+          tableMask = size-1;
+        }
+      }
       for (Cache c: caches) // Reset Cache objects
         c.reset();
     }
 
   //-------------------------------------------------------------------
-  //  Set cache size.
+  //  Set cache size: 0-9 or FULL.
   //-------------------------------------------------------------------
   public void setMemo(int m)
     {
-      if (m<0 | m>9) throw new Error("m=" + m + " is outside range 0-9");
+      checkMemo(m);
       cacheSize = m;
     }
 
+  //-------------------------------------------------------------------
+  //  Set memo window for full memoization; 0 means no window.
+  //-------------------------------------------------------------------
+  public void setWindow(int w)
+    {
+      checkWindow(w);
+      window = w;
+    }
+
+  //-------------------------------------------------------------------
+  //  Check arguments of 'setMemo' and 'setWindow'.
+  //  Used also by re-entrant parser that keeps them until parse.
+  //-------------------------------------------------------------------
+  public static void checkMemo(int m)
+    {
+      if (m!=FULL && (m<0 | m>9))
+        throw new Error("m=" + m + " is outside range 0-9");
+    }
+
+  public static void checkWindow(int w)
+    { if (w<0) throw new Error("w=" + w + " is negative"); }
+
   //=====================================================================
   //
   //  Methods called from parsing procedures
@@ -94,6 +160,24 @@ public class ParserMemo extends ParserBase
   //=====================================================================
   //-------------------------------------------------------------------
   //  If saved result found, use it, otherwise begin new procedure.
+  //  Procedure with name and diagnostic name given by their ids.
+  //-------------------------------------------------------------------
+  protected boolean saved(int name, int diag, Cache c)
+    {
+      reuse = c.find();
+      if (reuse!=null)                 // If found Phrase to reuse..
+        return true;                   // .. return
+
+      begin(name,diag);                // Otherwise push new Phrase
+      c.save(current);                 // .. and cache it
+      return false;
+    }
+
+  protected boolean saved(int name, Cache c)
+    { return saved(name,name,c); }
+
+  //-------------------------------------------------------------------
+  //  The same with names given as Strings.
   //-------------------------------------------------------------------
   protected boolean saved(String name, String diag, Cache c)
     {
@@ -119,7 +203,7 @@ public class ParserMemo extends ParserBase
       current.hwmUpdFrom(reuse);       // Propagate error info
       if (!reuse.success)
          return false;
-      current.rhs.add(reuse);          // Attach to rhs of current
+      current.rhsAdd(reuse);           // Attach to rhs of current
         return true;
     }
 
@@ -133,7 +217,7 @@ public class ParserMemo extends ParserBase
       current.hwmUpdFrom(reuse);       // Propagate error info
       if (!reuse.success)
          return false;
-      current.rhs.addAll(reuse.rhs);   // Add rhs to rhs of current
+      current.rhsAddAll(reuse);        // Add rhs to rhs of current
         return true;
     }
 
@@ -157,7 +241,9 @@ public class ParserMemo extends ParserBase
 
   protected class Cache
   {
-    Phrase[] cache = new Phrase[cacheSize];
+    Phrase[] cache = null;  // Recent results (cacheSize 1-9)
+    Phrase[] table = null;  // Results by position (cacheSize FULL)
+    int[] epochs = null;    // Epochs of entries when recycling
     int last = 0;
 
     //-----------------------------------------------------------------
@@ -167,13 +253,35 @@ public class ParserMemo extends ParserBase
       {}
 
     //-----------------------------------------------------------------
-    //  Save Phrase 'p'
+    //  Save Phrase 'p', returning the Phrase it replaced, if any.
+    //  Nothing is saved while 'is' has shortened the input:
+    //  the result may not be valid for the whole input.
     //-----------------------------------------------------------------
-    void save(Phrase p)
+    Phrase save(Phrase p)
       {
-        if (cacheSize==0) return;
-        last = (last+1)%cacheSize;
-        cache[last] = p;
+        if (cacheSize==0 || endpos!=source.end()) return null;
+        Phrase[] a;
+        int i;
+        if (cacheSize==FULL)
+        {
+          if (table==null)
+          {
+            table = new Phrase[tableSize];
+            epochs = recycle? new int[tableSize] : null;
+          }
+          a = table;
+          i = p.start & tableMask;
+        }
+        else
+        {
+          last = (last+1)%cacheSize;
+          a = cache;
+          i = last;
+        }
+        Phrase old = fresh(i)? a[i] : null;
+        a[i] = p;
+        if (epochs!=null) epochs[i] = epoch;
+        return old;
       }
 
     //-----------------------------------------------------------------
@@ -181,19 +289,59 @@ public class ParserMemo extends ParserBase
     //-----------------------------------------------------------------
     Phrase find()
       {
-        if (cacheSize==0) return null;
-        for (Phrase p: cache)
-          if (p!=null && p.start==pos) return p;
+        if (cacheSize==0 || endpos!=source.end()) return null;
+        if (cacheSize==FULL)
+        {
+          if (table==null) return null;
+          int i = pos & tableMask;
+          Phrase p = table[i];
+          return p!=null && fresh(i) && p.start==pos? p : null;
+        }
+        for (int i=0;i<cacheSize;i++)
+        {
+          Phrase p = cache[i];
+          if (p!=null && fresh(i) && p.start==pos) return p;
+        }
         return null;
       }
 
     //-----------------------------------------------------------------
-    //  Reset to empty
+    //  Is entry 'i' saved by current parse?
+    //-----------------------------------------------------------------
+    private boolean fresh(int i)
+      { return epochs==null || epochs[i]==epoch; }
+
+    //-----------------------------------------------------------------
+    //  Reset to empty.
+    //  The table for FULL is allocated by first 'save':
+    //  many expressions are never called.
+    //  When recycling, arrays from previous parse are kept
+    //  if they fit: their old entries have old epoch.
     //-----------------------------------------------------------------
     void reset()
       {
-        cache = new Phrase[cacheSize];
         last = 0;
+        if (!recycle)
+        {
+          cache = cacheSize==FULL? null : new Phrase[cacheSize];
+          table = null;
+          epochs = null;
+        }
+        else if (cacheSize==FULL)
+        {
+          cache = null;
+          if (table!=null && (epochs==null || table.length<tableSize))
+            table = null;
+        }
+        else
+        {
+          table = null;
+          if (cache==null || epochs==null || cache.length!=cacheSize)
+          {
+            cache = new Phrase[cacheSize];
+            epochs = new int[cacheSize];
+          }
+        }
       }
   }
 }
@@ -0,0 +1,521 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.Arrays;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  ParserRecognizer
+//
+//-------------------------------------------------------------------------
+//
+//  Base for parsers generated with option -C (recognizers).
+//
+//  A recognizer only checks if the input is correct, and reports
+//  the error if not. It does not create Phrases, does not call
+//  semantic actions, and does not allocate objects while parsing.
+//
+//  Instead of a high-water mark in each Phrase, there is one global
+//  mark: the farthest position where a failure was registered,
+//  and ids of expressions that failed there. The parse stack is
+//  a stack of frames kept in arrays indexed by depth, as in
+//  ParserArray. A frame has start position, id of diagnostic name,
+//  and the state of the mark when the frame was pushed. These are
+//  used to backtrack and to replace failures registered by a Rule
+//  by its diagnostic name, as in ParserBase.
+//
+//  Failures within predicates are not registered, as they are
+//  removed in ParserBase when the predicate completes.
+//  Failure of 'a:b' or 'a:!b' replaces failures registered
+//  by the enclosing procedure, by restoring the mark saved
+//  in its frame. Procedures that contain 'a:b' or 'a:!b' are
+//  started by 'beginIs', that keeps for this purpose also
+//  the ids in the mark.
+//
+//  The error position and message are thus the same as from
+//  the parser with Phrases, unless semantic actions of that
+//  parser modify the error information, e.g. by 'errClear'.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class ParserRecognizer extends ParserBase
+{
+  //-------------------------------------------------------------------
+  //  High-water mark: position of farthest failure and ids
+  //  of expressions that failed there. The first 'hwmCnt'
+  //  entries of 'hwmExp' are used.
+  //-------------------------------------------------------------------
+  int hwm;
+  int[] hwmExp = new int[16];
+  int hwmCnt;
+
+  //-------------------------------------------------------------------
+  //  Number of failures registered so far. Used to find
+  //  if an ascent procedure registered any failure.
+  //-------------------------------------------------------------------
+  int fails;
+
+  //-------------------------------------------------------------------
+  //  Depth of nested predicates and 'is' expressions.
+  //  Failures are not registered if greater than 0.
+  //-------------------------------------------------------------------
+  int quiet;
+
+  //-------------------------------------------------------------------
+  //  Stack of frames. Top of stack is at 'sp'.
+  //-------------------------------------------------------------------
+  int sp;
+  int[] fStart = new int[64];       // Start position
+  int[] fDiag  = new int[64];       // Id of diagnostic name, or -1
+  int[] fHwm   = new int[64];       // 'hwm' when pushed
+  int[] fCnt   = new int[64];       // 'hwmCnt' when pushed
+  int[] fFails = new int[64];       // 'fails' when pushed
+  int[] fKept  = new int[64];       // Index of kept ids, or -1
+
+  //-------------------------------------------------------------------
+  //  Stack of ids kept by 'beginIs': the first 'fCnt' ids
+  //  of the mark when the frame was pushed, at index 'fKept'.
+  //  Top of the stack is at 'keptTop'.
+  //-------------------------------------------------------------------
+  int keptTop;
+  int[] kept = new int[64];
+
+  //-------------------------------------------------------------------
+  //  Stack of currently processed ascents: ids of names of Entry
+  //  expressions in 'diags'. Top of the stack is at 'asp'.
+  //-------------------------------------------------------------------
+  int asp;
+  int[] ascs = new int[16];
+
+  //-------------------------------------------------------------------
+  //  Constructor
+  //-------------------------------------------------------------------
+  protected ParserRecognizer()
+    {}
+
+  //-------------------------------------------------------------------
+  //  Initialize parsing
+  //-------------------------------------------------------------------
+  public void init(Source src)
+    {
+      super.init(src);
+      hwm = -1;
+      hwmCnt = 0;
+      fails = 0;
+      quiet = 0;
+      sp = -1;
+      asp = -1;
+      keptTop = 0;
+    }
+
+  //-------------------------------------------------------------------
+  //  Close parser: print message (if not caught otherwise).
+  //-------------------------------------------------------------------
+  protected void closeParser(boolean ok)
+    {
+      if (!ok && hwm>=0)
+        System.out.println(errMsg());
+    }
+
+  //-------------------------------------------------------------------
+  //  Position of the error found by last parse, or -1 if none.
+  //-------------------------------------------------------------------
+  public int errPos()
+    { return hwm; }
+
+  //-------------------------------------------------------------------
+  //  Error message from last parse, or empty string if none.
+  //-------------------------------------------------------------------
+  public String errMsg()
+    {
+      Phrase p = newPhrase("","",0);
+      p.hwmCopyFrom(hwm,hwmExp,hwmCnt);
+      return p.errMsg();
+    }
+
+  //=====================================================================
+  //
+  //  Service methods called from parsing procedures.
+  //  Parameter 'e' is id of diagnostic name of the procedure.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Begin Rule or ascent procedure.
+  //-------------------------------------------------------------------
+  protected void begin(int e)
+    { push(e); }
+
+  //-------------------------------------------------------------------
+  //  Begin Inner.
+  //-------------------------------------------------------------------
+  protected void begin()
+    { push(-1); }
+
+  //-------------------------------------------------------------------
+  //  Begin Rule or Inner that contains 'a:b' or 'a:!b'.
+  //-------------------------------------------------------------------
+  protected void beginIs(int e)
+    {
+      push(e);
+      keep();
+    }
+
+  protected void beginIs()
+    {
+      push(-1);
+      keep();
+    }
+
+  //-------------------------------------------------------------------
+  //  Begin predicate.
+  //-------------------------------------------------------------------
+  protected void beginPred(int e)
+    {
+      push(e);
+      quiet++;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept Rule.
+  //-------------------------------------------------------------------
+  protected boolean accept()
+    {
+      dropAccepted();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept Inner.
+  //-------------------------------------------------------------------
+  protected boolean acceptInner()
+    {
+      dropAccepted();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Accept predicate.
+  //-------------------------------------------------------------------
+  protected boolean acceptPred()
+    {
+      pos = fStart[sp];                // Do not consume input
+      quiet--;
+      dropAccepted();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject Rule.
+  //  If no failure was registered after the start, replace failures
+  //  registered there by the Rule with its diagnostic name.
+  //  As the mark never moves back, the failures registered before
+  //  the Rule are still the first 'fCnt' ids if the mark was
+  //  at the start when the frame was pushed.
+  //-------------------------------------------------------------------
+  protected boolean reject()
+    {
+      int s = fStart[sp];
+      pos = s;                         // Do not consume input
+      if (quiet==0 && track)
+      {
+        fails++;
+        if (hwm<=s)                    // If no later failure..
+        {
+          if (hwm<s)                   // .. and none at start:
+          {                            //    start new mark
+            hwm = s;
+            hwmCnt = 0;
+          }
+          else if (fHwm[sp]==s)        // .. or mark was at start:
+            hwmCnt = fCnt[sp];         //    keep what was before
+          else
+            hwmCnt = 0;                // .. otherwise discard
+          add(fDiag[sp]);              // Register failure of Rule
+        }
+      }
+      dropRejected();
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject ascent procedure for Rule.
+  //  Register its failure only if it did not register any.
+  //-------------------------------------------------------------------
+  protected boolean rejectAscent()
+    {
+      pos = fStart[sp];                // Do not consume input
+      if (fails==fFails[sp])
+        fail(fDiag[sp]);
+      dropRejected();
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject Inner.
+  //-------------------------------------------------------------------
+  protected boolean rejectInner()
+    {
+      pos = fStart[sp];                // Do not consume input
+      dropRejected();
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reject predicate.
+  //-------------------------------------------------------------------
+  protected boolean rejectPred()
+    {
+      pos = fStart[sp];                // Do not consume input
+      quiet--;
+      fail(fDiag[sp]);                 // Register 'xxx (not) expected'
+      dropRejected();
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Inlined subexpressions: only the position is restored.
+  //  Override methods in ParserBase.
+  //
+  //=====================================================================
+  protected boolean beginInl()
+    {
+      pushInl(0,0);
+      return true;
+    }
+
+  protected boolean endInl(boolean ok)
+    {
+      inlTop -= 3;
+      if (ok) return true;
+      pos = inl[inlTop];               // Do not consume input
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Service method for operation 'a:b' and a:!b'
+  //
+  //=====================================================================
+  protected boolean is(boolean ok, FuncVB a,FuncVB b)
+    {
+      int savestart = pos;
+      if (!a.exec()) return false;
+      int saveend = pos;
+
+      quiet++;
+      pos = savestart;
+      endpos = saveend;
+
+      boolean match = b.exec() && pos==endpos;
+
+      pos = saveend;
+      endpos = source.end();
+      quiet--;
+      return isEnd(ok,match,savestart);
+    }
+
+  //-------------------------------------------------------------------
+  //  The same where 'b' is a choice of string literals.
+  //-------------------------------------------------------------------
+  protected boolean is(boolean ok, FuncVB a,StringSet set)
+    {
+      int savestart = pos;
+      if (!a.exec()) return false;
+      boolean match = set.contains(source,chars,savestart,pos);
+      return isEnd(ok,match,savestart);
+    }
+
+  //-------------------------------------------------------------------
+  //  Complete 'is' started at 'savestart': unless 'match'
+  //  is as required by 'ok', discard failures registered
+  //  by the enclosing procedure, and register failure of 'is'.
+  //  (As 'hwmSet' in its Phrase, followed by merge with the mark
+  //  of the caller, in ParserBase.)
+  //-------------------------------------------------------------------
+  private boolean isEnd(boolean ok, boolean match, int savestart)
+    {
+      if (match!=ok)
+      {
+        if (fKept[sp]>=0)              // Restore mark of the frame
+        {
+          hwm = fHwm[sp];
+          hwmCnt = fCnt[sp];
+          System.arraycopy(kept,fKept[sp],hwmExp,0,hwmCnt);
+        }
+        int saveend = pos;
+        pos = savestart;
+        fail(diags.id("is expression"));
+        pos = saveend;
+      }
+      return match==ok;
+    }
+
+  //=====================================================================
+  //
+  //  Service methods called from ascent procedures
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Begin ascent for Entry with name id 'entry'.
+  //-------------------------------------------------------------------
+  protected void beginAsc(int entry)
+    {
+      asp++;
+      if (asp==ascs.length)
+        ascs = Arrays.copyOf(ascs,2*asp);
+      ascs[asp] = entry;
+    }
+
+  //-------------------------------------------------------------------
+  //  End ascent
+  //-------------------------------------------------------------------
+  protected void endAsc()
+    { asp--; }
+
+  //-------------------------------------------------------------------
+  //  End grow: is 'e' the name id of Entry of current ascent?
+  //-------------------------------------------------------------------
+  protected boolean endGrow(int e)
+    { return e==ascs[asp]; }
+
+  //=====================================================================
+  //
+  //  Terminals. Override methods in ParserBase.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Consume terminal
+  //-------------------------------------------------------------------
+  boolean consume(int n)
+    {
+      pos += n;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Fail
+  //-------------------------------------------------------------------
+  boolean fail(int e)
+    {
+      if (quiet>0 || !track) return false;
+      fails++;
+      if (hwm>pos) return false;       // If 'pos' older: forget
+      if (hwm<pos)                     // If 'pos' newer: replace
+      {
+        hwmCnt = 0;
+        hwm = pos;
+      }
+      add(e);                          // If same position: add
+      return false;
+    }
+
+  //=====================================================================
+  //
+  //  Frames and mark
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Push new frame.
+  //-------------------------------------------------------------------
+  void push(int e)
+    {
+      sp++;
+      if (sp==fStart.length) grow();
+      fStart[sp] = pos;
+      fDiag[sp]  = e;
+      fHwm[sp]   = hwm;
+      fCnt[sp]   = hwmCnt;
+      fFails[sp] = fails;
+      fKept[sp]  = -1;
+    }
+
+  //-------------------------------------------------------------------
+  //  Pop frame of procedure that succeeded or failed.
+  //  Overridden in ParserRecognizerMemo to save the result.
+  //-------------------------------------------------------------------
+  void dropAccepted()
+    { drop(); }
+
+  void dropRejected()
+    { drop(); }
+
+  //-------------------------------------------------------------------
+  //  Pop frame.
+  //-------------------------------------------------------------------
+  void drop()
+    {
+      if (fKept[sp]>=0) keptTop = fKept[sp];
+      sp--;
+    }
+
+  //-------------------------------------------------------------------
+  //  Add id 'e' to the mark unless already there.
+  //-------------------------------------------------------------------
+  void add(int e)
+    {
+      for (int i=0;i<hwmCnt;i++)
+        if (hwmExp[i]==e) return;
+      if (hwmCnt==hwmExp.length)
+      {
+        int[] n = new int[2*hwmCnt];
+        System.arraycopy(hwmExp,0,n,0,hwmCnt);
+        hwmExp = n;
+      }
+      hwmExp[hwmCnt++] = e;
+    }
+
+  //-------------------------------------------------------------------
+  //  Keep ids of the mark for the top frame, if failures
+  //  are registered.
+  //-------------------------------------------------------------------
+  private void keep()
+    {
+      if (quiet>0 || !track) return;
+      int n = hwmCnt;
+      if (keptTop+n>kept.length)
+        kept = Arrays.copyOf(kept,2*(keptTop+n));
+      System.arraycopy(hwmExp,0,kept,keptTop,n);
+      fKept[sp] = keptTop;
+      keptTop += n;
+    }
+
+  //-------------------------------------------------------------------
+  //  Double the size of frame arrays.
+  //-------------------------------------------------------------------
+  private void grow()
+    {
+      int n = 2*fStart.length;
+      fStart = Arrays.copyOf(fStart,n);
+      fDiag  = Arrays.copyOf(fDiag,n);
+      fHwm   = Arrays.copyOf(fHwm,n);
+      fCnt   = Arrays.copyOf(fCnt,n);
+      fFails = Arrays.copyOf(fFails,n);
+      fKept  = Arrays.copyOf(fKept,n);
+    }
+}
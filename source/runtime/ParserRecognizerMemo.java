@@ -0,0 +1,375 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.Arrays;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  ParserRecognizerMemo
+//
+//-------------------------------------------------------------------------
+//
+//  Base for recognizers generated with options -C and -M.
+//
+//  The result of a procedure is saved in its Cache as the end position,
+//  success indicator, and the failures it added to the high-water mark.
+//  The failures are kept in an array created for the result,
+//  unless the procedure did not add any. The amount of memoization
+//  and the memo window are set as for ParserMemo.
+//
+//  Results are not saved within predicates and 'is' expressions,
+//  where failures are not registered.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class ParserRecognizerMemo extends ParserRecognizer
+{
+  //-------------------------------------------------------------------
+  //  Cache size: 0-9 or ParserMemo.FULL.
+  //-------------------------------------------------------------------
+  int cacheSize = 0;
+
+  //-------------------------------------------------------------------
+  //  Cache size requesting full memoization.
+  //-------------------------------------------------------------------
+  public static final int FULL = ParserMemo.FULL;
+
+  //-------------------------------------------------------------------
+  //  Memo window for full memoization, 0 if none.
+  //  (See ParserMemo.)
+  //-------------------------------------------------------------------
+  int window = 0;
+
+  //-------------------------------------------------------------------
+  //  Size of tables for full memoization and mask to obtain
+  //  table index from position. Set by 'init'.
+  //-------------------------------------------------------------------
+  int tableSize;
+  int tableMask;
+
+  //-------------------------------------------------------------------
+  //  Cache of each frame, or null if the result is not to be saved.
+  //-------------------------------------------------------------------
+  Cache[] fCache = new Cache[64];
+
+  //-------------------------------------------------------------------
+  //  Result to reuse: Cache and index of its entry.
+  //-------------------------------------------------------------------
+  Cache reuse;
+  int reuseAt;
+
+  //-------------------------------------------------------------------
+  //  List of Cache objects for initialization.
+  //-------------------------------------------------------------------
+  protected Cache[] caches;
+
+  //-------------------------------------------------------------------
+  //  Constructor
+  //-------------------------------------------------------------------
+  protected ParserRecognizerMemo()
+    {}
+
+  //-------------------------------------------------------------------
+  //  Initialize
+  //-------------------------------------------------------------------
+  public void init(Source src)
+    {
+      super.init(src);
+      tableSize = endpos+1;
+      tableMask = -1;
+      if (window>0)
+      {
+        int size = Integer.highestOneBit(window)<<1;
+        if (size>0 && size<tableSize)
+        {
+          tableSize = size;
+          tableMask = size-1;
+        }
+      }
+      for (Cache c: caches) // Reset Cache objects
+        c.reset();
+    }
+
+  //-------------------------------------------------------------------
+  //  Set cache size: 0-9 or FULL.
+  //-------------------------------------------------------------------
+  public void setMemo(int m)
+    {
+      ParserMemo.checkMemo(m);
+      cacheSize = m;
+    }
+
+  //-------------------------------------------------------------------
+  //  Set memo window for full memoization; 0 means no window.
+  //-------------------------------------------------------------------
+  public void setWindow(int w)
+    {
+      ParserMemo.checkWindow(w);
+      window = w;
+    }
+
+  //=====================================================================
+  //
+  //  Methods called from parsing procedures
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  If saved result found, use it, otherwise begin new procedure.
+  //  Rule with diagnostic name 'e'.
+  //-------------------------------------------------------------------
+  protected boolean saved(Cache c, int e)
+    {
+      if (c.find()) return true;
+      begin(e);
+      fCache[sp] = c;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Inner.
+  //-------------------------------------------------------------------
+  protected boolean saved(Cache c)
+    {
+      if (c.find()) return true;
+      begin();
+      fCache[sp] = c;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Rule with diagnostic name 'e' that contains 'a:b' or 'a:!b'.
+  //-------------------------------------------------------------------
+  protected boolean savedIs(Cache c, int e)
+    {
+      if (c.find()) return true;
+      beginIs(e);
+      fCache[sp] = c;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Inner that contains 'a:b' or 'a:!b'.
+  //-------------------------------------------------------------------
+  protected boolean savedIs(Cache c)
+    {
+      if (c.find()) return true;
+      beginIs();
+      fCache[sp] = c;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Predicate with diagnostic name 'e'.
+  //-------------------------------------------------------------------
+  protected boolean savedPred(Cache c, int e)
+    {
+      if (c.find()) return true;
+      beginPred(e);
+      fCache[sp] = c;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reuse saved result.
+  //-------------------------------------------------------------------
+  protected boolean reuse()
+    {
+      Cache c = reuse;
+      int i = reuseAt;
+      pos = c.end[i];                  // Update position
+      if (c.failed[i] && quiet==0)     // Propagate error info
+      {
+        fails++;
+        int[] exp = c.exp[i];
+        if (exp!=null && c.failAt[i]>=hwm)
+        {
+          if (c.failAt[i]>hwm)
+          {
+            hwmCnt = 0;
+            hwm = c.failAt[i];
+          }
+          for (int e: exp)
+            add(e);
+        }
+      }
+      return c.ok[i];
+    }
+
+  //=====================================================================
+  //
+  //  Frames. Override methods in ParserRecognizer.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Push new frame, without Cache.
+  //-------------------------------------------------------------------
+  void push(int e)
+    {
+      super.push(e);
+      if (sp==fCache.length)
+        fCache = Arrays.copyOf(fCache,fStart.length);
+      fCache[sp] = null;
+    }
+
+  //-------------------------------------------------------------------
+  //  Pop frame, saving the result in its Cache.
+  //-------------------------------------------------------------------
+  void dropAccepted()
+    {
+      save(true);
+      drop();
+    }
+
+  void dropRejected()
+    {
+      save(false);
+      drop();
+    }
+
+  private void save(boolean ok)
+    {
+      Cache c = fCache[sp];
+      if (c!=null && quiet==0)
+        c.save(ok);
+    }
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Cache
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+  protected class Cache
+  {
+    //-----------------------------------------------------------------
+    //  Saved results in parallel arrays: recent results
+    //  (cacheSize 1-9) or results by position (cacheSize FULL).
+    //  Entry 'i' is not used if 'start[i]' is -1.
+    //-----------------------------------------------------------------
+    int[] start = null;     // Start position
+    int[] end;              // End position
+    boolean[] ok;           // Success?
+    boolean[] failed;       // Registered any failure?
+    int[] failAt;           // Position of added failures..
+    int[][] exp;            // .. and their ids, or null if none
+    int last = 0;
+
+    //-----------------------------------------------------------------
+    //  Constructor
+    //-----------------------------------------------------------------
+    public Cache()
+      {}
+
+    //-----------------------------------------------------------------
+    //  Save result of procedure in the top frame.
+    //-----------------------------------------------------------------
+    void save(boolean success)
+      {
+        if (cacheSize==0) return;
+        int n = cacheSize==FULL? tableSize : cacheSize;
+        if (start==null || start.length!=n) allocate(n);
+        int s = fStart[sp];
+        int i;
+        if (cacheSize==FULL)
+          i = s & tableMask;
+        else
+        {
+          last = (last+1)%cacheSize;
+          i = last;
+        }
+        start[i] = s;
+        end[i] = pos;
+        ok[i] = success;
+        failed[i] = fails!=fFails[sp];
+        exp[i] = null;
+        failAt[i] = hwm;
+        int from;                      // Failures added by procedure:
+        if (hwm>fHwm[sp]) from = 0;    //   all if mark was moved
+        else from = fCnt[sp];          //   otherwise those after push
+        if (from<hwmCnt)
+          exp[i] = Arrays.copyOfRange(hwmExp,from,hwmCnt);
+      }
+
+    //-----------------------------------------------------------------
+    //  Find result saved at current position. If found,
+    //  set it as result to reuse. Nothing is found while 'is'
+    //  has shortened the input.
+    //-----------------------------------------------------------------
+    boolean find()
+      {
+        if (start==null || endpos!=source.end()) return false;
+        if (cacheSize==FULL)
+        {
+          int i = pos & tableMask;
+          if (start[i]!=pos) return false;
+          reuse = this;
+          reuseAt = i;
+          return true;
+        }
+        for (int i=0;i<start.length;i++)
+        {
+          if (start[i]!=pos) continue;
+          reuse = this;
+          reuseAt = i;
+          return true;
+        }
+        return false;
+      }
+
+    //-----------------------------------------------------------------
+    //  Reset to empty. Arrays from previous parse are kept
+    //  if they fit.
+    //-----------------------------------------------------------------
+    void reset()
+      {
+        last = 0;
+        int n = cacheSize==FULL? tableSize : cacheSize;
+        if (start!=null && start.length==n)
+          Arrays.fill(start,-1);
+        else
+          start = null;
+      }
+
+    //-----------------------------------------------------------------
+    //  Allocate arrays for 'n' entries.
+    //  The table for FULL is allocated by first 'save':
+    //  many expressions are never called.
+    //-----------------------------------------------------------------
+    private void allocate(int n)
+      {
+        start = new int[n];
+        Arrays.fill(start,-1);
+        end = new int[n];
+        ok = new boolean[n];
+        failed = new boolean[n];
+        failAt = new int[n];
+        exp = new int[n][];
+      }
+  }
+}
@@ -53,6 +53,12 @@
 //      'completeInner', 'completeSeed'.
 //      Added 'begin' and 'ascentSemantics' to override
 //      methods from ParserBase.
+//    Version 2.4
+//      Added 'miss' and 'evict' to Cache statistics.
+//      Terminal methods receive id of diagnostic name.
+//      The previous terminal methods are kept for parsers
+//      generated by earlier versions.
+//      Two-pass mode is ignored.
 //
 //=========================================================================
 
@@ -95,6 +101,13 @@ public class ParserTest extends ParserMemo
       traceError = trace.indexOf('e')>=0;
     }
 
+  //-------------------------------------------------------------------
+  //  Two-pass mode is ignored: statistics are for one parse
+  //  with full error information.
+  //-------------------------------------------------------------------
+  public void setTwoPass(boolean t)
+    {}
+
   //-------------------------------------------------------------------
   //  Access to cache list
   //-------------------------------------------------------------------
@@ -128,6 +141,7 @@ public class ParserTest extends ParserMemo
         return true;
       }
 
+      if (cacheSize!=0) c.miss++;
       begin(name,diag);
       c.save(current);
       if (c.prevpos.get(pos)) c.rescan++;
@@ -153,6 +167,7 @@ public class ParserTest extends ParserMemo
         return true;
       }
 
+      if (cacheSize!=0) c.miss++;
       begin(name,diag);
       c.save(current);
       if (c.prevpos.get(pos)) c.rescan++;
@@ -288,6 +303,190 @@ public class ParserTest extends ParserMemo
   //
   //  Parsing methods for terminals.
   //  Override methods in ParserBase to provide trace and statistics.
+  //  Parameter 'e' is id of diagnostic name of the expression.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Execute expression 'c'
+  //-------------------------------------------------------------------
+  protected boolean next(char ch,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.next(ch,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^'c'
+  //-------------------------------------------------------------------
+  protected boolean nextNot(char ch,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.nextNot(ch,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &'c', !^'c'
+  //-------------------------------------------------------------------
+  protected boolean ahead(char ch,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.ahead(ch,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  protected boolean aheadNotNot(char ch,int e,Cache c)
+    { return ahead(ch,e,c); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !'c', &^'c'
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(char ch,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadNot(ch,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression "s"
+  //-------------------------------------------------------------------
+  protected boolean next(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.next(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &"s"
+  //-------------------------------------------------------------------
+  protected boolean ahead(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.ahead(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !"s"
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadNot(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression [s]
+  //-------------------------------------------------------------------
+  protected boolean nextIn(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.nextIn(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ^[s]
+  //-------------------------------------------------------------------
+  protected boolean nextNotIn(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.nextNotIn(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[s], !^[s]
+  //-------------------------------------------------------------------
+  protected boolean aheadIn(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadIn(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  protected boolean aheadNotNotIn(String s,int e,Cache c)
+    { return aheadIn(s,e,c); }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![s], &^[s]
+  //-------------------------------------------------------------------
+  protected boolean aheadNotIn(String s,int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadNotIn(s,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression [a-z]
+  //-------------------------------------------------------------------
+  protected boolean nextIn(char a, char z, int e, Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.nextIn(a,z,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &[a-z]
+  //-------------------------------------------------------------------
+  protected boolean aheadIn(char a, char z, int e, Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadIn(a,z,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression ![a-z]
+  //-------------------------------------------------------------------
+  protected boolean aheadNotIn(char a, char z, int e, Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadNotIn(a,z,e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression _
+  //-------------------------------------------------------------------
+  protected boolean next(int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.next(e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression &_
+  //-------------------------------------------------------------------
+  protected boolean ahead(int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.ahead(e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Execute expression !_
+  //-------------------------------------------------------------------
+  protected boolean aheadNot(int e,Cache c)
+    {
+      int endpos = pos;
+      boolean succ = super.aheadNot(e);
+      return traceTerm(endpos,succ,c);
+    }
+
+  //=====================================================================
+  //
+  //  Parsing methods for terminals called by instrumented parsers
+  //  generated by earlier versions. Diagnostic name is constructed
+  //  on failure.
   //
   //=====================================================================
   //-------------------------------------------------------------------
@@ -580,6 +779,8 @@ public class ParserTest extends ParserMemo
     public int totback; // Accumulated amount of backtrack
     public int maxback; // Maximum length of backtrack
     public int maxbpos; // Position of naximal backtrack
+    public int miss   ; // How many memo lookups found nothing
+    public int evict  ; // How many saved results were evicted
     BitSet prevpos    ; // Scan history
 
     //-----------------------------------------------------------------
@@ -592,7 +793,18 @@ public class ParserTest extends ParserMemo
       }
 
     //-----------------------------------------------------------------
-    //  Constructor.
+    //  Save Phrase 'p', counting eviction by the memo window.
+    //  (Replacing the oldest of recent results is not eviction.)
+    //-----------------------------------------------------------------
+    Phrase save(Phrase p)
+      {
+        Phrase old = super.save(p);
+        if (old!=null && cacheSize==FULL && tableMask>=0) evict++;
+        return old;
+      }
+
+    //-----------------------------------------------------------------
+    //  Reset.
     //-----------------------------------------------------------------
     void reset()
       {
@@ -606,6 +818,8 @@ public class ParserTest extends ParserMemo
         totback = 0;
         maxback = 0;
         maxbpos = 0;
+        miss    = 0;
+        evict   = 0;
         prevpos = new BitSet(60000);
       }
   }
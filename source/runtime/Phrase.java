@@ -46,6 +46,25 @@
 //      code copied back into 'addToPrint'.
 //      Use 'FuncVV' instead of 'Deferred'.
 //      Clean up of fix from Version 1.9.2.
+//    Version 2.4
+//      High-water mark keeps ids of diagnostic names
+//      in a deduplicated array instead of Vector of Strings.
+//      Added 'diags' to translate the ids into names,
+//      and its parameter to the constructor.
+//      Terminals can be kept in 'rhs' as spans without Phrase
+//      ('spans'), created on request by 'rhsAt'.
+//      Access to 'rhs' from Parser via methods.
+//      'rhs' and 'defAct' are created on first use.
+//      'rhs' doubles its capacity when full, instead of adding 10,
+//      to avoid quadratic time for long repetitions.
+//      'hwmUpdFrom' and 'hwmCopyFrom' for mark given by arrays.
+//      Added 'reset' to reuse the Phrase in a recycling parser.
+//      Added 'line', 'column' and 'lineText'.
+//      Added 'id' and 'diagId': ids of 'name' and 'diag' in the table
+//      of names, and 'isA(int)' that compares the id.
+//      Added 'rhsTruncate', 'actSize' and 'actTruncate'
+//      for subexpressions inlined in the Phrase.
+//      Added 'errSet' marking use of 'errClear' or 'errAdd'.
 //
 //=========================================================================
 
@@ -79,6 +98,13 @@ public class Phrase
   //-----------------------------------------------------------------
   String diag;
 
+  //-----------------------------------------------------------------
+  //  Ids of 'name' and 'diag' in the table of names 'diags',
+  //  or -1 if the Phrase was not created by a procedure.
+  //-----------------------------------------------------------------
+  int id;
+  int diagId;
+
   //-----------------------------------------------------------------
   //  Text represented by this Phrase: start and end positions
   //  in input represented by 'source'.
@@ -87,6 +113,11 @@ public class Phrase
   int end;
   Source source;
 
+  //-----------------------------------------------------------------
+  //  Table of diagnostic names used by the parser.
+  //-----------------------------------------------------------------
+  DiagNames diags;
+
   //-----------------------------------------------------------------
   //  Input position where this Phrase was created.
   //  (Ascent procedures create Phrases with 'start'
@@ -95,9 +126,19 @@ public class Phrase
   int createdAt;
 
   //-----------------------------------------------------------------
-  //  Right-hand side.
+  //  Right-hand side. Created on first use: null if empty.
+  //  Capacity is doubled when full, so that time to build
+  //  rhs of a long repetition is linear in its length.
+  //-----------------------------------------------------------------
+  Vector<Phrase> rhs = null;
+
+  //-----------------------------------------------------------------
+  //  Spans of terminals kept in 'rhs' without Phrase.
+  //  If rhs element i is null, it is a terminal that occupies
+  //  text from spans[2*i] to spans[2*i+1].
+  //  Allocated on first use.
   //-----------------------------------------------------------------
-  Vector<Phrase> rhs = new Vector<Phrase>(10,10);
+  int[] spans = null;
 
   //-----------------------------------------------------------------
   //  Syntactic value.
@@ -125,15 +166,25 @@ public class Phrase
   //  - 'hwmExp' identifies the expression(s) that failed at 'hwm'.
   //     There may be several such expressions if 'hwm' was reached
   //     on several attempts. The expressions are identified
-  //     by their diagnostic names.
+  //     by ids of their diagnostic names, in the order of first
+  //     failure, without duplicates. Only the first 'hwmCnt'
+  //     elements are used. The array is allocated on first use.
   //-----------------------------------------------------------------
   int hwm = -1;
-  Vector<String> hwmExp = new Vector<String>();
+  int[] hwmExp = null;
+  int hwmCnt = 0;
 
   //-----------------------------------------------------------------
-  //  Deferred actions
+  //  Set by 'errClear' and 'errAdd' called from semantic action.
+  //  Used in two-pass parsing to set the same information
+  //  in the second pass, where the actions are not called.
   //-----------------------------------------------------------------
-  Vector<FuncVV> defAct = new Vector<FuncVV>();
+  boolean errSet = false;
+
+  //-----------------------------------------------------------------
+  //  Deferred actions. Created on first use: null if none.
+  //-----------------------------------------------------------------
+  Vector<FuncVV> defAct = null;
 
   //-----------------------------------------------------------------
   //  Semantic action in recursive ascent
@@ -145,14 +196,34 @@ public class Phrase
   //  Constructor
   //
   //===================================================================
-  protected Phrase(String name,String diag,int start,Source source)
+  protected Phrase(String name,String diag,int start,Source source,DiagNames diags)
+    { reset(name,diag,start,source,diags); }
+
+  //-----------------------------------------------------------------
+  //  Reset to the state of a new Phrase. Used by recycling parser
+  //  to reuse the Phrase in another parse. Arrays allocated
+  //  for 'rhs', 'spans' and 'hwmExp' are kept.
+  //-----------------------------------------------------------------
+  void reset(String name,String diag,int start,Source source,DiagNames diags)
     {
       this.name = name;
       this.diag = diag;
+      this.id = -1;
+      this.diagId = -1;
       this.start = start;
       this.end = start;
       this.createdAt = start;
       this.source = source;
+      this.diags = diags;
+      if (rhs!=null) rhs.clear();
+      value = null;
+      parent = null;
+      success = false;
+      hwm = -1;
+      hwmCnt = 0;
+      errSet = false;
+      defAct = null;
+      semAct = null;
     }
 
   //===================================================================
@@ -202,6 +273,13 @@ public class Phrase
   public boolean isA(String rule)
     { return name.equals(rule); }
 
+  //-------------------------------------------------------------------
+  //  Was this Phrase created by Rule with id 'rule'?
+  //  (The ids are constants 'ID_name' of the generated parser.)
+  //-------------------------------------------------------------------
+  public boolean isA(int rule)
+    { return id==rule; }
+
   //-------------------------------------------------------------------
   //  Was this Phrase created by a terminal?
   //-------------------------------------------------------------------
@@ -214,6 +292,19 @@ public class Phrase
   public String where(int i)
     { return source.where(start+i); }
 
+  //-------------------------------------------------------------------
+  //  Line and column of i-th character of the Phrase,
+  //  and text of its line, from index of lines in source text.
+  //-------------------------------------------------------------------
+  public int line(int i)
+    { return source.line(start+i); }
+
+  public int column(int i)
+    { return source.column(start+i); }
+
+  public String lineText(int i)
+    { return source.lineText(start+i); }
+
   //-----------------------------------------------------------------
   //  Get error message
   //-----------------------------------------------------------------
@@ -227,34 +318,44 @@ public class Phrase
   //  Clear error information
   //-----------------------------------------------------------------
   public void errClear()
-    { hwmClear(); }
+    {
+      hwmClear();
+      errSet = true;
+    }
 
   //-----------------------------------------------------------------
   //  Add information about 'expr' failing at the i-th character
   //  of this Phrase.
   //-----------------------------------------------------------------
   public void errAdd(String expr, int i)
-    { hwmSet(expr,start+i); }
+    {
+      hwmSet(diags.id(expr),start+i);
+      errSet = true;
+    }
 
   //-----------------------------------------------------------------
   //  Clear deferred actions
   //-----------------------------------------------------------------
   public void actClear()
-    { defAct.clear(); }
+    { defAct = null; }
 
   //-----------------------------------------------------------------
   //  Add deferred action
   //-----------------------------------------------------------------
   public void actAdd(FuncVV a)
-    { defAct.add(a); }
+    {
+      if (defAct==null) defAct = new Vector<FuncVV>();
+      defAct.add(a);
+    }
 
   //-----------------------------------------------------------------
   //  Execute deferred actions
   //-----------------------------------------------------------------
   public void actExec()
     {
+      if (defAct==null) return;
       for (FuncVV a: defAct) a.exec();
-      defAct.clear();
+      defAct = null;
     }
 
   //-----------------------------------------------------------------
@@ -266,8 +367,9 @@ public class Phrase
       String result = name+" "+start+"-"+end+" text="+source.at(start,end)+" v="+value+" msg="+errMsg();
       if (rhs==null || rhs.isEmpty()) return result;
       result += " rhs: ";
-      for (Phrase p: rhs)
+      for (int i=0;i<rhs.size();i++)
       {
+          Phrase p = rhsAt(i);
       //  result += p.name;
           if (p==this){result += "\n   !"+p.name; break;}
           result += "\n    "+ p.asString();
@@ -280,63 +382,216 @@ public class Phrase
   //  Metods called from Parser
   //
   //===================================================================
+  //-----------------------------------------------------------------
+  //  Append Phrase 'p' to rhs.
+  //-----------------------------------------------------------------
+  void rhsAdd(Phrase p)
+    {
+      if (rhs==null) rhs = new Vector<Phrase>();
+      rhs.add(p);
+    }
+
+  //-----------------------------------------------------------------
+  //  Append terminal that occupies text from 'from' to 'to'
+  //  as span, without creating Phrase.
+  //-----------------------------------------------------------------
+  void rhsAddSpan(int from, int to)
+    {
+      int i = rhsSize();
+      rhsAdd(null);
+      if (spans==null)
+        spans = new int[Math.max(2*i+2,8)];
+      else if (spans.length<2*i+2)
+      {
+        int[] s = new int[Math.max(2*i+2,2*spans.length)];
+        System.arraycopy(spans,0,s,0,spans.length);
+        spans = s;
+      }
+      spans[2*i] = from;
+      spans[2*i+1] = to;
+    }
+
+  //-----------------------------------------------------------------
+  //  Append rhs of Phrase 'p' to rhs.
+  //-----------------------------------------------------------------
+  void rhsAddAll(Phrase p)
+    {
+      if (p.rhs==null) return;
+      if (p.spans==null)
+      {
+        if (rhs==null) rhs = new Vector<Phrase>();
+        rhs.addAll(p.rhs);
+        return;
+      }
+      for (int i=0;i<p.rhs.size();i++)
+      {
+        Phrase q = p.rhs.elementAt(i);
+        if (q==null) rhsAddSpan(p.spans[2*i],p.spans[2*i+1]);
+        else rhsAdd(q);
+      }
+    }
+
+  //-----------------------------------------------------------------
+  //  Size of rhs.
+  //-----------------------------------------------------------------
+  int rhsSize()
+    { return rhs==null? 0 : rhs.size(); }
+
+  //-----------------------------------------------------------------
+  //  Truncate rhs to the first 'n' elements.
+  //-----------------------------------------------------------------
+  void rhsTruncate(int n)
+    {
+      if (rhs!=null) rhs.setSize(n);
+    }
+
+  //-----------------------------------------------------------------
+  //  Discard rhs.
+  //-----------------------------------------------------------------
+  void rhsDiscard()
+    {
+      rhs = null;
+      spans = null;
+    }
+
+  //-----------------------------------------------------------------
+  //  Get i-th element of rhs, creating Phrase for terminal
+  //  if it was kept as span.
+  //-----------------------------------------------------------------
+  Phrase rhsAt(int i)
+    {
+      Phrase p = rhs.elementAt(i);
+      if (p!=null) return p;
+      p = new Phrase("","",spans[2*i],source,diags);
+      p.end = spans[2*i+1];
+      rhs.set(i,p);
+      return p;
+    }
+
+  //-----------------------------------------------------------------
+  //  Start and end of i-th element of rhs.
+  //-----------------------------------------------------------------
+  int rhsStart(int i)
+    {
+      Phrase p = rhs.elementAt(i);
+      return p!=null? p.start : spans[2*i];
+    }
+
+  int rhsEnd(int i)
+    {
+      Phrase p = rhs.elementAt(i);
+      return p!=null? p.end : spans[2*i+1];
+    }
+
+  //-----------------------------------------------------------------
+  //  Get rhs with Phrases created for all terminals.
+  //-----------------------------------------------------------------
+  Vector<Phrase> rhsAll()
+    {
+      if (rhs==null) return new Vector<Phrase>();
+      if (spans!=null)
+        for (int i=0;i<rhs.size();i++) rhsAt(i);
+      return rhs;
+    }
+
+  //-----------------------------------------------------------------
+  //  Append deferred actions of Phrase 'p'.
+  //-----------------------------------------------------------------
+  void actAddFrom(Phrase p)
+    {
+      if (p.defAct==null) return;
+      if (defAct==null) defAct = new Vector<FuncVV>();
+      defAct.addAll(p.defAct);
+    }
+
+  //-----------------------------------------------------------------
+  //  Number of deferred actions.
+  //-----------------------------------------------------------------
+  int actSize()
+    { return defAct==null? 0 : defAct.size(); }
+
+  //-----------------------------------------------------------------
+  //  Truncate deferred actions to the first 'n'.
+  //-----------------------------------------------------------------
+  void actTruncate(int n)
+    {
+      if (defAct!=null) defAct.setSize(n);
+    }
+
   //-----------------------------------------------------------------
   //  Clear high-water mark.
   //  Setting -2 as hwm marks the use of 'hwmClear'.
   //-----------------------------------------------------------------
   void hwmClear()
     {
-      hwmExp.clear();
+      hwmCnt = 0;
       hwm = -2;
     }
 
   //-----------------------------------------------------------------
   //  Set fresh mark ('what' failed 'where'), discarding any previous.
+  //  'what' is id of diagnostic name.
   //-----------------------------------------------------------------
-  void hwmSet(String what, int where)
+  void hwmSet(int what, int where)
     {
-      hwmExp.clear();
-      hwmExp.add(what);
+      hwmCnt = 0;
+      hwmAdd(what);
       hwm = where;
     }
 
   //-----------------------------------------------------------------
   //  Add info about 'what' failing at position 'where'.
+  //  'what' is id of diagnostic name.
   //-----------------------------------------------------------------
-  void hwmUpd(String what,int where)
+  void hwmUpd(int what,int where)
     {
       if (hwm>where) return;   // If 'where' older: forget
       if (hwm<where)           // If 'where' newer: replace
       {
-        hwmExp.clear();
+        hwmCnt = 0;
         hwm = where;
       }
                                // If same position: add
-      hwmExp.add(what);
+      hwmAdd(what);
     }
 
   //-----------------------------------------------------------------
   //  Update high-water mark with that from Phrase 'p'.
   //-----------------------------------------------------------------
   void hwmUpdFrom(Phrase p)
+    { hwmUpdFrom(p.hwm,p.hwmExp,p.hwmCnt); }
+
+  //-----------------------------------------------------------------
+  //  Update high-water mark with mark 'h' and the first 'cnt'
+  //  ids from 'exp'.
+  //-----------------------------------------------------------------
+  void hwmUpdFrom(int h, int[] exp, int cnt)
     {
-      if (hwm>p.hwm) return;   // If p's info older: forget
-      if (hwm<p.hwm)           // If p's info  newer: replace
+      if (hwm>h) return;       // If that info older: forget
+      if (hwm<h)               // If that info newer: replace
       {
-        hwmExp.clear();
-        hwm = p.hwm;
+        hwmCnt = 0;
+        hwm = h;
       }
-      hwmExp.addAll(p.hwmExp); // If same position: add
+      for (int i=0;i<cnt;i++)  // If same position: add
+        hwmAdd(exp[i]);
     }
 
   //-----------------------------------------------------------------
   //  Copy high-water mark with that from Phrase 'p'.
   //-----------------------------------------------------------------
   void hwmCopyFrom(Phrase p)
+    { hwmCopyFrom(p.hwm,p.hwmExp,p.hwmCnt); }
+
+  //-----------------------------------------------------------------
+  //  Set high-water mark to 'h' and the first 'cnt' ids from 'exp'.
+  //-----------------------------------------------------------------
+  void hwmCopyFrom(int h, int[] exp, int cnt)
     {
-      hwmExp.clear();
-      hwmExp.addAll(p.hwmExp);
-      hwm = p.hwm;
+      hwmCnt = 0;
+      for (int i=0;i<cnt;i++)
+        hwmAdd(exp[i]);
+      hwm = h;
     }
 
   //===================================================================
@@ -344,6 +599,27 @@ public class Phrase
   //  Private methods
   //
   //===================================================================
+  //-----------------------------------------------------------------
+  //  Add id 'what' to high-water mark unless already there.
+  //-----------------------------------------------------------------
+  private void hwmAdd(int what)
+    {
+      if (hwmExp==null)
+        hwmExp = new int[4];
+      else
+      {
+        for (int i=0;i<hwmCnt;i++)
+          if (hwmExp[i]==what) return;
+        if (hwmCnt==hwmExp.length)
+        {
+          int[] e = new int[2*hwmCnt];
+          System.arraycopy(hwmExp,0,e,0,hwmCnt);
+          hwmExp = e;
+        }
+      }
+      hwmExp[hwmCnt++] = what;
+    }
+
   //-----------------------------------------------------------------
   //  Translate high-water mark into error message.
   //-----------------------------------------------------------------
@@ -351,11 +627,9 @@ public class Phrase
     {
       StringBuilder one = new StringBuilder();
       StringBuilder two = new StringBuilder();
-      Vector<String> done = new Vector<String>();
-      for (String s: hwmExp)
+      for (int i=0;i<hwmCnt;i++)
       {
-        if (done.contains(s)) continue;
-        done.add(s);
+        String s = diags.name(hwmExp[i]);
         if (s.startsWith("not "))
           addToPrint(" or " + s.substring(4),two);
         else
@@ -22,6 +22,9 @@
 //    Version 1.2
 //      License changed by the author to Apache v.2.
 //      Package name changed.
+//    Version 2.4
+//      Added 'matches' and 'chars' with default implementations.
+//      Added 'lines', 'line', 'column' and 'lineText'.
 //
 //=========================================================================
 
@@ -66,8 +69,60 @@ public interface Source
   //-------------------------------------------------------------------
   String at(int p, int q);
 
+  //-------------------------------------------------------------------
+  //  Are characters at positions p through p+s.length-1 those in 's'?
+  //  The caller ensures that p+s.length does not exceed end().
+  //  The default compares the characters obtained from 'at'.
+  //-------------------------------------------------------------------
+  default boolean matches(int p, char[] s)
+    {
+      for (int i=0;i<s.length;i++)
+        if (at(p+i)!=s[i]) return false;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns array with characters at positions 0 through end()-1,
+  //  if the wrapper keeps them in an array, or null if not.
+  //  The parser reads characters from the array instead of
+  //  calling 'at'. The array must not be modified.
+  //-------------------------------------------------------------------
+  default char[] chars()
+    { return null; }
+
   //-------------------------------------------------------------------
   //  Describes position p in user's terms.
   //-------------------------------------------------------------------
   String where(int p);
+
+  //-------------------------------------------------------------------
+  //  Returns index of lines in the text.
+  //  The wrappers create it at first call and keep it;
+  //  the default creates a new index at each call.
+  //-------------------------------------------------------------------
+  default LineIndex lines()
+    { return new LineIndex(this); }
+
+  //-------------------------------------------------------------------
+  //  Returns line and column of position p, numbered from 1.
+  //-------------------------------------------------------------------
+  default int line(int p)
+    { return lines().line(p); }
+
+  default int column(int p)
+    { return lines().column(p); }
+
+  //-------------------------------------------------------------------
+  //  Returns text of the line containing position p,
+  //  without line terminator.
+  //-------------------------------------------------------------------
+  default String lineText(int p)
+    {
+      LineIndex lines = lines();
+      int ln = lines.line(p);
+      int a = lines.start(ln);
+      int z = lines.end(ln);
+      if (z>a && at(z-1)=='\r') z--;
+      return at(a,z);
+    }
 }
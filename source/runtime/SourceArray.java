@@ -0,0 +1,133 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.Arrays;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  Wrapper for parser input in the form of an array of characters.
+//  The parser reads the characters directly from the array.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class SourceArray implements Source
+{
+  //=====================================================================
+  //
+  //  Data.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  The array and number of characters in it.
+  //  Note: it is the array given to the constructor, not a copy.
+  //  It must not be modified while in use by the parser.
+  //-------------------------------------------------------------------
+  char[] text;
+  int length;
+
+  //-------------------------------------------------------------------
+  //  Index of lines, created at first use.
+  //-------------------------------------------------------------------
+  private volatile LineIndex lines = null;
+
+  //=====================================================================
+  //
+  //  Constructors. Wrap the array 'a' or its first 'n' characters.
+  //
+  //=====================================================================
+  public SourceArray(char[] a)
+    { this(a,a.length); }
+
+  public SourceArray(char[] a, int n)
+    {
+      if (n<0 || n>a.length)
+        throw new IllegalArgumentException("length " + n + " of array " + a.length);
+      text = a;
+      length = n;
+    }
+
+  //=====================================================================
+  //
+  //  Interface methods.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Is the wrapper correctly initialized?
+  //-------------------------------------------------------------------
+  public boolean created()
+    { return true; }
+
+  //-------------------------------------------------------------------
+  //  Returns end position.
+  //-------------------------------------------------------------------
+  public int end()
+    { return length; }
+
+  //-------------------------------------------------------------------
+  //  Returns character at position p.
+  //-------------------------------------------------------------------
+  public char at(int p)
+    { return text[p]; }
+
+  //-------------------------------------------------------------------
+  //  Returns characters at positions p through q-1.
+  //-------------------------------------------------------------------
+  public String at(int p, int q)
+    { return new String(text,p,q-p); }
+
+  //-------------------------------------------------------------------
+  //  Are characters at positions p through p+s.length-1 those in 's'?
+  //-------------------------------------------------------------------
+  public boolean matches(int p, char[] s)
+    { return Arrays.equals(text,p,p+s.length,s,0,s.length); }
+
+  //-------------------------------------------------------------------
+  //  Returns the array.
+  //-------------------------------------------------------------------
+  public char[] chars()
+    { return text; }
+
+  //-------------------------------------------------------------------
+  //  Describes position p in terms of line and column number.
+  //  Lines and columns are numbered starting with 1.
+  //-------------------------------------------------------------------
+  public String where(int p)
+    {
+      LineIndex lines = lines();
+      return ("line " + lines.line(p) + " col. " + lines.column(p));
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns index of lines, creating it at first call.
+  //-------------------------------------------------------------------
+  public LineIndex lines()
+    {
+      if (lines==null) lines = new LineIndex(this);
+      return lines;
+    }
+}
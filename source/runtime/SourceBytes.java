@@ -0,0 +1,181 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.channels.*;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  Wrapper for parser input in the form of bytes, from a memory-mapped
+//  file or from an array, for parsers generated with option -B.
+//  Each byte is presented as a character 0-255, and positions are
+//  positions of bytes. Nothing is decoded, except text returned
+//  by 'at(p,q)', that is decoded from UTF-8.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class SourceBytes implements Source
+{
+  //=====================================================================
+  //
+  //  Data.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  The file, or null if input is from array.
+  //-------------------------------------------------------------------
+  private File f = null;
+
+  //-------------------------------------------------------------------
+  //  The bytes: mapped file or wrapped array.
+  //-------------------------------------------------------------------
+  private ByteBuffer bytes;
+  private int length;
+
+  //-------------------------------------------------------------------
+  //  Index of lines, created at first use.
+  //-------------------------------------------------------------------
+  private volatile LineIndex lines = null;
+
+  //-------------------------------------------------------------------
+  //  Success indicator.
+  //-------------------------------------------------------------------
+  private boolean created = false;
+
+  //=====================================================================
+  //
+  //  Constructors. Wrap the file identified by 'fileName',
+  //  or the array 'a' (not a copy: it must not be modified
+  //  while in use by the parser).
+  //
+  //=====================================================================
+  public SourceBytes(String fileName)
+    {
+      try
+      {
+        f = new File(fileName);
+        FileInputStream fis = new FileInputStream(f);
+        FileChannel fc = fis.getChannel();
+        if (fc.size()>Integer.MAX_VALUE)
+        {
+          System.err.println("File '" + fileName + "' is too large.");
+          fis.close();
+          return;
+        }
+        bytes = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        fis.close();
+        length = bytes.limit();
+        created = true;
+      }
+      catch (FileNotFoundException e)
+      { System.err.println("File '" + fileName + "' was not found."); }
+      catch (IOException e)
+      { System.err.println("Error in file '" + fileName + "' " + e.getMessage()); }
+    }
+
+  public SourceBytes(byte[] a)
+    {
+      bytes = ByteBuffer.wrap(a);
+      length = a.length;
+      created = true;
+    }
+
+  //=====================================================================
+  //
+  //  Interface methods.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Is the wrapper correctly initialized?
+  //-------------------------------------------------------------------
+  public boolean created()
+    { return created; }
+
+  //-------------------------------------------------------------------
+  //  Returns end position.
+  //-------------------------------------------------------------------
+  public int end()
+    { return length; }
+
+  //-------------------------------------------------------------------
+  //  Returns byte at position p.
+  //-------------------------------------------------------------------
+  public char at(int p)
+    { return (char)(bytes.get(p)&0xff); }
+
+  //-------------------------------------------------------------------
+  //  Returns text decoded from bytes at positions p through q-1.
+  //-------------------------------------------------------------------
+  public String at(int p, int q)
+    {
+      byte[] b = new byte[q-p];
+      bytes.get(p,b);
+      return new String(b,StandardCharsets.UTF_8);
+    }
+
+  //-------------------------------------------------------------------
+  //  Describes position p in terms of line and column number.
+  //  Lines and columns are numbered starting with 1.
+  //  Columns are counted in characters, not bytes.
+  //-------------------------------------------------------------------
+  public String where(int p)
+    { return ("line " + line(p) + " col. " + column(p)); }
+
+  //-------------------------------------------------------------------
+  //  Returns index of lines, creating it at first call.
+  //-------------------------------------------------------------------
+  public LineIndex lines()
+    {
+      if (lines==null) lines = new LineIndex(this);
+      return lines;
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns column of position p, counted in characters.
+  //-------------------------------------------------------------------
+  public int column(int p)
+    {
+      int col = 1;
+      for (int i=lines().start(line(p));i<p && i<length;i++)
+        if ((bytes.get(i)&0xc0)!=0x80) col++;
+      return col;
+    }
+
+  //=====================================================================
+  //
+  //  File-specific method.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Returns the file object, or null if input is from array.
+  //-------------------------------------------------------------------
+  public File file()
+    { return f; }
+}
@@ -33,6 +33,11 @@
 //      (Bug fix for endless loop if p = end of file.)
 //    Version 2.0
 //      Added catch for CharacterCoding Exception.
+//    Version 2.4
+//      Added 'matches' and 'chars'.
+//      Keeps the decoded characters in an array instead of String.
+//      Reports file larger than 2 GB instead of mapping a wrong size.
+//      'where' uses index of lines, created at first use.
 //
 //=========================================================================
 
@@ -42,11 +47,13 @@ import java.io.*;
 import java.nio.*;
 import java.nio.charset.*;
 import java.nio.channels.*;
+import java.util.Arrays;
 
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
 //
 //  Wrapper for parser input in the form of a file.
-//  Maps the entire file into a String using default character encoding.
+//  Maps the entire file into an array of characters
+//  using default character encoding.
 //
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
 
@@ -63,9 +70,15 @@ public class SourceFile implements Source
   private File f;
 
   //-------------------------------------------------------------------
-  //  Memory-mapped file.
+  //  Characters of the file: 'text[0]' through 'text[length-1]'.
   //-------------------------------------------------------------------
-  private String text;
+  private char[] text;
+  private int length;
+
+  //-------------------------------------------------------------------
+  //  Index of lines, created at first use.
+  //-------------------------------------------------------------------
+  private volatile LineIndex lines = null;
 
   //-------------------------------------------------------------------
   //  Character encoding assumed for the file.
@@ -94,6 +107,12 @@ public class SourceFile implements Source
         f = new File(fileName);
         FileInputStream fis = new FileInputStream(f);
         FileChannel fc = fis.getChannel();
+        if (fc.size()>Integer.MAX_VALUE)
+        {
+          System.err.println("File '" + fileName + "' is too large, use SourceMapped.");
+          fis.close();
+          return;
+        }
 
         // Get a CharBuffer from the source file
         ByteBuffer bb =
@@ -102,8 +121,15 @@ public class SourceFile implements Source
         CharBuffer cb = cd.decode(bb);
         fis.close();
 
-        // Convert to String
-        text = cb.toString();
+        // Use the array of CharBuffer, if it has one
+        if (cb.hasArray() && cb.arrayOffset()==0 && cb.position()==0)
+          text = cb.array();
+        else
+        {
+          text = new char[cb.remaining()];
+          cb.get(text);
+        }
+        length = cb.limit();
         created = true;
       }
       catch (FileNotFoundException e)
@@ -129,19 +155,31 @@ public class SourceFile implements Source
   //  Returns end position.
   //-------------------------------------------------------------------
   public int end()
-    { return text.length(); }
+    { return length; }
 
   //-------------------------------------------------------------------
   //  Returns character at position p.
   //-------------------------------------------------------------------
   public char at(int p)
-    { return text.charAt(p); }
+    { return text[p]; }
 
   //-------------------------------------------------------------------
   //  Returns characters at positions p through q-1.
   //-------------------------------------------------------------------
   public String at(int p, int q)
-    { return text.substring(p,q); }
+    { return new String(text,p,q-p); }
+
+  //-------------------------------------------------------------------
+  //  Are characters at positions p through p+s.length-1 those in 's'?
+  //-------------------------------------------------------------------
+  public boolean matches(int p, char[] s)
+    { return Arrays.equals(text,p,p+s.length,s,0,s.length); }
+
+  //-------------------------------------------------------------------
+  //  Returns the array of characters.
+  //-------------------------------------------------------------------
+  public char[] chars()
+    { return text; }
 
   //-------------------------------------------------------------------
   //  Describes position p in terms of line and column number.
@@ -149,19 +187,17 @@ public class SourceFile implements Source
   //-------------------------------------------------------------------
   public String where(int p)
     {
-      int ln = 1;   // Line number
-      int ls = -1;  // Line start (position of preceding newline)
-      int nextnl;   // Position of next newline or end
+      LineIndex lines = lines();
+      return ("line " + lines.line(p) + " col. " + lines.column(p));
+    }
 
-      while (true)
-      {
-        nextnl = text.indexOf('\n',ls+1);
-        if (nextnl<0) nextnl = text.length();
-        if (ls<p && p<=nextnl)
-          return ("line " + ln + " col. " + (p-ls));
-        ls = nextnl;
-        ln++;
-      }
+  //-------------------------------------------------------------------
+  //  Returns index of lines, creating it at first call.
+  //-------------------------------------------------------------------
+  public LineIndex lines()
+    {
+      if (lines==null) lines = new LineIndex(this);
+      return lines;
     }
 
   //=====================================================================
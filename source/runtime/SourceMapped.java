@@ -0,0 +1,452 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.channels.*;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  Wrapper for parser input in the form of a file that is kept
+//  memory-mapped instead of being decoded as a whole.
+//
+//  For a single-byte encoding, each character is obtained from its
+//  byte in the mapped file. (Bytes that do not represent a character
+//  in that encoding are read as U+FFFD.)
+//
+//  For UTF-8, the constructor scans the bytes to check the encoding,
+//  count the characters, and record where each block of characters
+//  begins. A block is decoded when the parser first reads from it,
+//  and a few recently used blocks are kept decoded.
+//
+//  Other encodings are not supported: use SourceFile for them.
+//
+//  The file is mapped in segments, so it may be larger than 2 GB,
+//  but it may not contain more than Integer.MAX_VALUE characters.
+//  The object is not thread-safe: it should be used by one parser
+//  at a time.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class SourceMapped implements Source
+{
+  //=====================================================================
+  //
+  //  Data.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  The file.
+  //-------------------------------------------------------------------
+  private File f;
+
+  //-------------------------------------------------------------------
+  //  Memory-mapped file: byte i is in segment i>>SEG_SHIFT
+  //  at offset i&SEG_MASK.
+  //-------------------------------------------------------------------
+  private static final int SEG_SHIFT = 30;
+  private static final long SEG_MASK = (1L<<SEG_SHIFT)-1;
+  private MappedByteBuffer[] segs;
+  private long size;
+
+  //-------------------------------------------------------------------
+  //  Number of characters.
+  //-------------------------------------------------------------------
+  private int length;
+
+  //-------------------------------------------------------------------
+  //  Index of lines, created at first use.
+  //-------------------------------------------------------------------
+  private volatile LineIndex lines = null;
+
+  //-------------------------------------------------------------------
+  //  Character encoding assumed for the file.
+  //-------------------------------------------------------------------
+  private Charset cs;
+
+  //-------------------------------------------------------------------
+  //  Single-byte encoding: character for each byte value.
+  //  Null for UTF-8.
+  //-------------------------------------------------------------------
+  private char[] table;
+
+  //-------------------------------------------------------------------
+  //  UTF-8: characters are decoded in blocks of BLOCK characters.
+  //  Block b contains characters b*BLOCK through (b+1)*BLOCK-1.
+  //  Its first character is decoded from the byte at 'start[b]'.
+  //  If 'split[b]' is true, the block begins with the second
+  //  half of a surrogate pair decoded from that byte.
+  //-------------------------------------------------------------------
+  private static final int SHIFT = 14;
+  private static final int BLOCK = 1<<SHIFT;
+  private static final int MASK = BLOCK-1;
+  private long[] start;
+  private boolean[] split;
+
+  //-------------------------------------------------------------------
+  //  UTF-8: decoded blocks. Block b is kept in slot b%SLOTS;
+  //  'cached[s]' is the number of block in slot s, or -1.
+  //-------------------------------------------------------------------
+  private static final int SLOTS = 16;
+  private char[][] blocks;
+  private int[] cached;
+
+  //-------------------------------------------------------------------
+  //  Success indicator.
+  //-------------------------------------------------------------------
+  private boolean created = false;
+
+  //=====================================================================
+  //
+  //  Constructors. Wrap the file identified by 'fileName',
+  //  using default character encoding or encoding 'cs'.
+  //
+  //=====================================================================
+  public SourceMapped(String fileName)
+    { this(fileName,Charset.defaultCharset()); }
+
+  public SourceMapped(String fileName, Charset cs)
+    {
+      this.cs = cs;
+      if (!cs.equals(StandardCharsets.UTF_8) && !singleByte(cs))
+      {
+        System.err.println("Encoding " + cs.name() + " of '" + fileName
+                           + "' is not supported by SourceMapped.");
+        return;
+      }
+
+      try
+      {
+        // Map the file in segments
+        f = new File(fileName);
+        FileInputStream fis = new FileInputStream(f);
+        FileChannel fc = fis.getChannel();
+        size = fc.size();
+        segs = new MappedByteBuffer[(int)((size+SEG_MASK)>>SEG_SHIFT)];
+        for (int i=0;i<segs.length;i++)
+        {
+          long p = (long)i<<SEG_SHIFT;
+          segs[i] = fc.map(FileChannel.MapMode.READ_ONLY,p,Math.min(SEG_MASK+1,size-p));
+        }
+        fis.close();
+
+        // Count characters
+        if (table!=null)
+        {
+          if (size>Integer.MAX_VALUE)
+            { tooLarge(fileName); return; }
+          length = (int)size;
+        }
+        else if (!index(fileName)) return;
+        created = true;
+      }
+      catch (FileNotFoundException e)
+      { System.err.println("File '" + fileName + "' was not found."); }
+      catch (IOException e)
+      { System.err.println("Error in file '" + fileName + "' " + e.getMessage()); }
+    }
+
+  //=====================================================================
+  //
+  //  Interface methods.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Is the wrapper correctly initialized?
+  //-------------------------------------------------------------------
+  public boolean created()
+    { return created; }
+
+  //-------------------------------------------------------------------
+  //  Returns end position.
+  //-------------------------------------------------------------------
+  public int end()
+    { return length; }
+
+  //-------------------------------------------------------------------
+  //  Returns character at position p.
+  //-------------------------------------------------------------------
+  public char at(int p)
+    {
+      if (table!=null) return table[get(p)&0xff];
+      int b = p>>>SHIFT;
+      int s = b&(SLOTS-1);
+      if (cached[s]!=b) load(b,s);
+      return blocks[s][p&MASK];
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns characters at positions p through q-1.
+  //-------------------------------------------------------------------
+  public String at(int p, int q)
+    {
+      char[] c = new char[q-p];
+      for (int i=p;i<q;i++)
+        c[i-p] = at(i);
+      return new String(c);
+    }
+
+  //-------------------------------------------------------------------
+  //  Describes position p in terms of line and column number.
+  //  Lines and columns are numbered starting with 1.
+  //-------------------------------------------------------------------
+  public String where(int p)
+    {
+      LineIndex lines = lines();
+      return ("line " + lines.line(p) + " col. " + lines.column(p));
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns index of lines, creating it at first call.
+  //-------------------------------------------------------------------
+  public LineIndex lines()
+    {
+      if (lines==null) lines = new LineIndex(this);
+      return lines;
+    }
+
+  //=====================================================================
+  //
+  //  File-specific methods.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Returns the file object.
+  //-------------------------------------------------------------------
+  public File file()
+    { return f; }
+
+  //-------------------------------------------------------------------
+  //  Returns the encoding.
+  //-------------------------------------------------------------------
+  public Charset charset()
+    { return cs; }
+
+  //=====================================================================
+  //
+  //  Single-byte encoding.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  If 'cs' is a single-byte encoding, build 'table' and return true.
+  //-------------------------------------------------------------------
+  private boolean singleByte(Charset cs)
+    {
+      if (!cs.canEncode() || cs.newEncoder().maxBytesPerChar()!=1) return false;
+      CharsetDecoder cd = cs.newDecoder();
+      if (cd.maxCharsPerByte()!=1) return false;
+      cd.onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+      table = new char[256];
+      for (int b=0;b<256;b++)
+      {
+        try
+        {
+          CharBuffer cb = cd.decode(ByteBuffer.wrap(new byte[]{(byte)b}));
+          table[b] = cb.remaining()==1? cb.get() : '\ufffd';
+        }
+        catch (CharacterCodingException e)
+        { table[b] = '\ufffd'; }
+      }
+      return true;
+    }
+
+  //=====================================================================
+  //
+  //  UTF-8.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Scan the file: check encoding, count characters,
+  //  and fill 'start' and 'split'. Return false if failed.
+  //-------------------------------------------------------------------
+  private boolean index(String fileName)
+    {
+      int n = (int)Math.min(size>>SHIFT,Integer.MAX_VALUE>>SHIFT)+1;
+      start = new long[n];
+      split = new boolean[n];
+      long chars = 0;
+      long i = 0;
+      while (i<size)
+      {
+        if ((chars&MASK)==0)
+        {
+          if (chars>Integer.MAX_VALUE-1)
+            { tooLarge(fileName); return false; }
+          start[(int)(chars>>>SHIFT)] = i;
+        }
+
+        byte b = get(i);
+        if (b>=0)                      // Fast path for ASCII
+        {
+          i++;
+          chars++;
+          continue;
+        }
+
+        int lg = sequence(i);
+        if (lg==0)
+        {
+          System.err.println("Character Coding Exception in '" + fileName
+                             + "' at byte " + i + ".");
+          return false;
+        }
+        if (lg==4)                     // Surrogate pair
+        {
+          chars++;
+          if ((chars&MASK)==0)
+          {
+            int k = (int)(chars>>>SHIFT);
+            if (k<n)
+            {
+              start[k] = i;
+              split[k] = true;
+            }
+          }
+        }
+        i += lg;
+        chars++;
+      }
+      if (chars>Integer.MAX_VALUE)
+        { tooLarge(fileName); return false; }
+      length = (int)chars;
+
+      blocks = new char[SLOTS][];
+      cached = new int[SLOTS];
+      for (int s=0;s<SLOTS;s++)
+        cached[s] = -1;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return length of well-formed UTF-8 sequence for a character
+  //  beginning with the non-ASCII byte at 'i', or 0 if ill-formed.
+  //-------------------------------------------------------------------
+  private int sequence(long i)
+    {
+      int b = get(i)&0xff;
+      int lg;
+      int lo = 0x80;                   // Range for the second byte
+      int hi = 0xbf;
+      if (b<0xc2) return 0;
+      else if (b<0xe0) lg = 2;
+      else if (b<0xf0)
+      {
+        lg = 3;
+        if (b==0xe0) lo = 0xa0;        // Not overlong
+        if (b==0xed) hi = 0x9f;        // Not surrogate
+      }
+      else if (b<0xf5)
+      {
+        lg = 4;
+        if (b==0xf0) lo = 0x90;        // Not overlong
+        if (b==0xf4) hi = 0x8f;        // Not above U+10FFFF
+      }
+      else return 0;
+
+      if (i+lg>size) return 0;
+      int c = get(i+1)&0xff;
+      if (c<lo || c>hi) return 0;
+      for (int k=2;k<lg;k++)
+        if ((get(i+k)&0xc0)!=0x80) return 0;
+      return lg;
+    }
+
+  //-------------------------------------------------------------------
+  //  Decode block b into slot s.
+  //-------------------------------------------------------------------
+  private void load(int b, int s)
+    {
+      if (blocks[s]==null) blocks[s] = new char[BLOCK];
+      char[] c = blocks[s];
+      int n = Math.min(BLOCK,length-(b<<SHIFT));
+      long i = start[b];
+      int k = 0;
+      while (k<n)
+      {
+        int b0 = get(i);
+        if (b0>=0)
+        {
+          c[k++] = (char)b0;
+          i++;
+          continue;
+        }
+        b0 &= 0xff;
+        int cp;
+        if (b0<0xe0)
+        {
+          cp = (b0&0x1f)<<6 | get(i+1)&0x3f;
+          i += 2;
+        }
+        else if (b0<0xf0)
+        {
+          cp = (b0&0x0f)<<12 | (get(i+1)&0x3f)<<6 | get(i+2)&0x3f;
+          i += 3;
+        }
+        else
+        {
+          cp = (b0&0x07)<<18 | (get(i+1)&0x3f)<<12
+               | (get(i+2)&0x3f)<<6 | get(i+3)&0x3f;
+          i += 4;
+        }
+
+        if (cp<0x10000)
+          c[k++] = (char)cp;
+        else
+        {
+          if (k>0 || !split[b])
+            c[k++] = Character.highSurrogate(cp);
+          if (k<n)
+            c[k++] = Character.lowSurrogate(cp);
+        }
+      }
+      cached[s] = b;
+    }
+
+  //=====================================================================
+  //
+  //  Common.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Byte at position i of the file.
+  //-------------------------------------------------------------------
+  private byte get(long i)
+    { return segs[(int)(i>>>SEG_SHIFT)].get((int)(i&SEG_MASK)); }
+
+  //-------------------------------------------------------------------
+  //  Report file with too many characters.
+  //-------------------------------------------------------------------
+  private void tooLarge(String fileName)
+    {
+      System.err.println("File '" + fileName + "' has more than "
+                         + Integer.MAX_VALUE + " characters.");
+    }
+}
@@ -23,6 +23,8 @@
 //      License changed by the author to Apache v.2.
 //      Renamed from 'SourceString' and package name changed.
 //      Modified where() to insert three dots.
+//    Version 2.4
+//      Added 'matches', 'chars' and 'lines'.
 //
 //=========================================================================
 
@@ -47,6 +49,16 @@ public class SourceString implements Source
   //-------------------------------------------------------------------
   String text;
 
+  //-------------------------------------------------------------------
+  //  Characters of 'text', created by the first call to 'chars'.
+  //-------------------------------------------------------------------
+  char[] chars = null;
+
+  //-------------------------------------------------------------------
+  //  Index of lines, created at first use.
+  //-------------------------------------------------------------------
+  private volatile LineIndex lines = null;
+
   //=====================================================================
   //
   //  Constructor. Wraps the string 's'.
@@ -84,6 +96,26 @@ public class SourceString implements Source
   public String at(int p, int q)
     { return text.substring(p,q); }
 
+  //-------------------------------------------------------------------
+  //  Are characters at positions p through p+s.length-1 those in 's'?
+  //-------------------------------------------------------------------
+  public boolean matches(int p, char[] s)
+    {
+      for (int i=0;i<s.length;i++)
+        if (text.charAt(p+i)!=s[i]) return false;
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  Returns the characters in an array.
+  //  The array is a copy of the string, made at the first call.
+  //-------------------------------------------------------------------
+  public char[] chars()
+    {
+      if (chars==null) chars = text.toCharArray();
+      return chars;
+    }
+
   //-------------------------------------------------------------------
   //  Describes position p in terms of preceding text.
   //-------------------------------------------------------------------
@@ -96,4 +128,13 @@ public class SourceString implements Source
       else
         return "At start";
     }
+
+  //-------------------------------------------------------------------
+  //  Returns index of lines, creating it at first call.
+  //-------------------------------------------------------------------
+  public LineIndex lines()
+    {
+      if (lines==null) lines = new LineIndex(this);
+      return lines;
+    }
 }
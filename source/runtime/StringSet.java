@@ -0,0 +1,132 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  StringSet
+//
+//-------------------------------------------------------------------------
+//
+//  Set of strings, generated as a static constant of the parser
+//  for 'a:b' and 'a:!b' where 'b' is a choice of string literals.
+//  Text matched by 'a' is looked up in a hash table with open
+//  addressing, without creating a String.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class StringSet
+{
+  //-------------------------------------------------------------------
+  //  Hash table: the strings and their hash codes.
+  //  Size of the table is a power of 2; 'mask' is size-1.
+  //  Unused entries have null string.
+  //-------------------------------------------------------------------
+  private final char[][] keys;
+  private final int[] hashes;
+  private final int mask;
+
+  //-------------------------------------------------------------------
+  //  Lengths of the shortest and the longest string.
+  //-------------------------------------------------------------------
+  private int minLg = Integer.MAX_VALUE;
+  private int maxLg = 0;
+
+  //-------------------------------------------------------------------
+  //  Constructor. The strings must be different.
+  //-------------------------------------------------------------------
+  public StringSet(String... strings)
+    {
+      int size = 4;
+      while (size<2*strings.length) size <<= 1;
+      keys = new char[size][];
+      hashes = new int[size];
+      mask = size-1;
+
+      for (String s: strings)
+      {
+        char[] k = s.toCharArray();
+        int h = hash(k,0,k.length);
+        int i = h & mask;
+        while (keys[i]!=null) i = (i+1) & mask;
+        keys[i] = k;
+        hashes[i] = h;
+        minLg = Math.min(minLg,k.length);
+        maxLg = Math.max(maxLg,k.length);
+      }
+    }
+
+  //-------------------------------------------------------------------
+  //  Is the text at positions p through q-1 of 'src' in the set?
+  //  'chars' is the array returned by 'src.chars()', or null.
+  //-------------------------------------------------------------------
+  public boolean contains(Source src, char[] chars, int p, int q)
+    {
+      int lg = q-p;
+      if (lg<minLg || lg>maxLg) return false;
+      int h = 0;
+      if (chars!=null)
+        h = hash(chars,p,q);
+      else
+      {
+        for (int j=p;j<q;j++)
+          h = 31*h + src.at(j);
+        h ^= h>>>16;
+      }
+      for (int i=h&mask;keys[i]!=null;i=(i+1)&mask)
+      {
+        if (hashes[i]!=h || keys[i].length!=lg) continue;
+        if (chars==null)
+        {
+          if (src.matches(p,keys[i])) return true;
+        }
+        else if (same(chars,p,keys[i])) return true;
+      }
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Hash code of characters 'c[p]' through 'c[q-1]'.
+  //-------------------------------------------------------------------
+  private static int hash(char[] c, int p, int q)
+    {
+      int h = 0;
+      for (int j=p;j<q;j++)
+        h = 31*h + c[j];
+      return h ^ (h>>>16);
+    }
+
+  //-------------------------------------------------------------------
+  //  Are characters of 'c' starting at 'p' those in 'k'?
+  //-------------------------------------------------------------------
+  private static boolean same(char[] c, int p, char[] k)
+    {
+      for (int j=0;j<k.length;j++)
+        if (c[p+j]!=k[j]) return false;
+      return true;
+    }
+}
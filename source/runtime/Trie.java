@@ -0,0 +1,192 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.runtime;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  Trie
+//
+//-------------------------------------------------------------------------
+//
+//  Choice of string literals "s1" / "s2" / ... , generated
+//  as a static constant of the parser. The literals are kept
+//  in a trie, walked once over the input to find the first
+//  alternative that matches: the alternative with lowest index
+//  among the literals that are prefixes of the input.
+//
+//  Nodes are numbered from 0 (the root). Children of node 'n'
+//  are nodes with labels 'label[i]' and numbers 'child[i]'
+//  for 'i' from 'first[n]' to 'first[n+1]-1', sorted by label.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class Trie
+{
+  //-------------------------------------------------------------------
+  //  The alternatives: lengths of literals and ids of their
+  //  diagnostic names.
+  //-------------------------------------------------------------------
+  private final int[] lengths;
+  private final int[] ids;
+
+  //-------------------------------------------------------------------
+  //  Nodes: index of first child, alternative ending at the node
+  //  (lowest index, or -1 if none), and lowest alternative ending
+  //  below the node (Integer.MAX_VALUE if none).
+  //-------------------------------------------------------------------
+  private final int[] first;
+  private final int[] alt;
+  private final int[] below;
+
+  //-------------------------------------------------------------------
+  //  Edges: labels and child nodes.
+  //-------------------------------------------------------------------
+  private final char[] label;
+  private final int[] child;
+
+  //-------------------------------------------------------------------
+  //  Constructor. 'ids' are ids of diagnostic names of 'literals'.
+  //-------------------------------------------------------------------
+  public Trie(String[] literals, int[] ids)
+    {
+      this.ids = ids;
+      lengths = new int[literals.length];
+
+      //-------------------------------------------------------------
+      //  The nodes are the distinct prefixes of literals,
+      //  numbered in sorted order. The root (empty prefix) is 0.
+      //-------------------------------------------------------------
+      TreeMap<String,Integer> nodes = new TreeMap<String,Integer>();
+      for (String s: literals)
+        for (int i=0;i<=s.length();i++)
+          nodes.put(s.substring(0,i),0);
+      int n = 0;
+      for (Map.Entry<String,Integer> e: nodes.entrySet())
+        e.setValue(n++);
+
+      first = new int[n+1];
+      alt = new int[n];
+      below = new int[n];
+      label = new char[n-1];
+      child = new int[n-1];
+      Arrays.fill(alt,-1);
+      Arrays.fill(below,Integer.MAX_VALUE);
+
+      for (int a=0;a<literals.length;a++)
+      {
+        String s = literals[a];
+        lengths[a] = s.length();
+        int k = nodes.get(s);
+        if (alt[k]<0) alt[k] = a;
+        for (int i=0;i<s.length();i++)  // Update nodes above
+        {
+          int m = nodes.get(s.substring(0,i));
+          below[m] = Math.min(below[m],a);
+        }
+      }
+
+      //-------------------------------------------------------------
+      //  Edges, grouped by parent node in order of node numbers.
+      //  (The parent of prefix 'p' is 'p' without its last
+      //  character.) Sorted prefixes give sorted labels.
+      //-------------------------------------------------------------
+      int[] count = new int[n];
+      for (String p: nodes.keySet())
+        if (p.length()>0)
+          count[nodes.get(p.substring(0,p.length()-1))]++;
+      for (int k=0;k<n;k++)
+        first[k+1] = first[k] + count[k];
+      int[] next = Arrays.copyOf(first,n);
+      for (String p: nodes.keySet())
+      {
+        if (p.length()==0) continue;
+        int parent = nodes.get(p.substring(0,p.length()-1));
+        int i = next[parent]++;
+        label[i] = p.charAt(p.length()-1);
+        child[i] = nodes.get(p);
+      }
+    }
+
+  //-------------------------------------------------------------------
+  //  Find the first alternative that matches text of 'src'
+  //  starting at position 'p', without going beyond 'end'.
+  //  'chars' is the array returned by 'src.chars()', or null.
+  //  Returns index of the alternative, or -1 if none matches.
+  //-------------------------------------------------------------------
+  public int match(Source src, char[] chars, int p, int end)
+    {
+      int node = 0;
+      int found = alt[0];
+      while (p<end)
+      {
+        if (found>=0 && below[node]>found) break; // Nothing better below
+        char c = chars!=null? chars[p] : src.at(p);
+        node = child(node,c);
+        if (node<0) break;
+        p++;
+        int a = alt[node];
+        if (a>=0 && (found<0 || a<found)) found = a;
+      }
+      return found;
+    }
+
+  //-------------------------------------------------------------------
+  //  Number of alternatives.
+  //-------------------------------------------------------------------
+  public int size()
+    { return ids.length; }
+
+  //-------------------------------------------------------------------
+  //  Length of literal and id of diagnostic name of alternative 'a'.
+  //-------------------------------------------------------------------
+  public int length(int a)
+    { return lengths[a]; }
+
+  public int id(int a)
+    { return ids[a]; }
+
+  //-------------------------------------------------------------------
+  //  Child of node 'n' with label 'c', or -1 if none.
+  //-------------------------------------------------------------------
+  private int child(int n, char c)
+    {
+      int lo = first[n];
+      int hi = first[n+1]-1;
+      while (lo<=hi)
+      {
+        int m = (lo+hi)>>>1;
+        if (c<label[m]) hi = m-1;
+        else if (c>label[m]) lo = m+1;
+        else return child[m];
+      }
+      return -1;
+    }
+}
@@ -0,0 +1,316 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//    Version 2.4
+//      Created.
+//
+//=========================================================================
+
+package mouse.utility;
+
+import mouse.runtime.Source;
+import mouse.runtime.SourceFile;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  ParallelFiles
+//
+//-------------------------------------------------------------------------
+//
+//  Applies a test to each file in a list, using several worker threads.
+//  Used by option -j of TryParser and TestParser.
+//
+//  A reader thread reads the files into Source objects ahead of
+//  the workers, through a queue that holds at most two files
+//  per worker. Each worker takes the next file from the queue
+//  and applies the test, identifying itself by a number 0 to n-1,
+//  so the test can use objects (such as parsers) of that worker.
+//
+//  Everything written to System.out and System.err while reading
+//  and testing a file is collected, and written to System.out
+//  and System.err in the order of the list, as if the files
+//  were tested one after another. The same is done for other
+//  output streams obtained from method 'order'.
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+public class ParallelFiles
+{
+  //=====================================================================
+  //
+  //  Test to be applied.
+  //
+  //=====================================================================
+  public interface Test
+  {
+    //-----------------------------------------------------------------
+    //  Test file 'name' read into 'src', using objects of 'worker'.
+    //  Return true if passed.
+    //-----------------------------------------------------------------
+    boolean test(int worker, String name, Source src) throws Exception;
+  }
+
+  //=====================================================================
+  //
+  //  Data
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Files to test.
+  //-------------------------------------------------------------------
+  private Vector<String> files;
+  private Item[] items;
+
+  //-------------------------------------------------------------------
+  //  Files read and waiting for a worker.
+  //  Item with index -1 tells the worker to stop.
+  //-------------------------------------------------------------------
+  private ArrayBlockingQueue<Item> queue;
+
+  //-------------------------------------------------------------------
+  //  Number of workers and the test.
+  //-------------------------------------------------------------------
+  private int workers;
+  private Test test;
+
+  //-------------------------------------------------------------------
+  //  Streams that receive output in the order of files.
+  //  Stream number i receives contents of buffer i of each Item.
+  //-------------------------------------------------------------------
+  private Vector<PrintStream> streams = new Vector<PrintStream>();
+
+  //-------------------------------------------------------------------
+  //  Current file of each thread, that collects its output.
+  //-------------------------------------------------------------------
+  private ThreadLocal<Item> sink = new ThreadLocal<Item>();
+
+  //=====================================================================
+  //
+  //  Constructor
+  //
+  //=====================================================================
+  public ParallelFiles(Vector<String> files, int workers)
+    {
+      this.files = files;
+      this.workers = workers;
+    }
+
+  //=====================================================================
+  //
+  //  Return stream whose output for each file is written to 's'
+  //  in the order of files. Must be called before 'run'.
+  //
+  //=====================================================================
+  public PrintStream order(PrintStream s)
+    {
+      streams.add(s);
+      return new PrintStream(new Router(streams.size()-1),true);
+    }
+
+  //=====================================================================
+  //
+  //  Apply 'test' to the files.
+  //  Return the number of files that failed the test.
+  //  An exception from the test is thrown as Error after
+  //  writing the output of files that precede the failing one.
+  //
+  //=====================================================================
+  public int run(Test test)
+    {
+      this.test = test;
+      PrintStream out = System.out;
+      PrintStream err = System.err;
+      System.setOut(order(out));
+      System.setErr(order(err));
+
+      items = new Item[files.size()];
+      for (int i=0;i<items.length;i++)
+        items[i] = new Item(i,files.elementAt(i),streams.size());
+      queue = new ArrayBlockingQueue<Item>(2*workers);
+
+      try
+      {
+        Thread reader = new Thread(()->read());
+        reader.setDaemon(true);
+        reader.start();
+        for (int w=0;w<workers;w++)
+        {
+          final int n = w;
+          Thread worker = new Thread(()->work(n));
+          worker.setDaemon(true);
+          worker.start();
+        }
+
+        int failed = 0;
+        for (Item item: items)
+        {
+          item.await();
+          for (int i=0;i<streams.size();i++)
+          {
+            PrintStream s = streams.elementAt(i);
+            s.write(item.buffers[i].toByteArray(),0,item.buffers[i].size());
+            s.flush();
+          }
+          item.buffers = null;
+          if (item.error!=null)
+            throw new Error(item.name + ": " + item.error,item.error);
+          if (!item.passed) failed++;
+        }
+        return failed;
+      }
+      finally
+      {
+        System.setOut(out);
+        System.setErr(err);
+      }
+    }
+
+  //=====================================================================
+  //
+  //  Reader thread.
+  //
+  //=====================================================================
+  private void read()
+    {
+      try
+      {
+        for (Item item: items)
+        {
+          sink.set(item);
+          try
+          { item.src = new SourceFile(item.name); }
+          catch (Throwable e)            // Worker completes the item
+          { item.error = e; }
+          sink.remove();
+          queue.put(item);
+        }
+        for (int w=0;w<workers;w++)
+          queue.put(new Item(-1,null,0));
+      }
+      catch (InterruptedException e)
+      { throw new Error(e); }
+    }
+
+  //=====================================================================
+  //
+  //  Worker thread number 'w'.
+  //
+  //=====================================================================
+  private void work(int w)
+    {
+      while (true)
+      {
+        Item item;
+        try
+        { item = queue.take(); }
+        catch (InterruptedException e)
+        { throw new Error(e); }
+        if (item.index<0) return;
+
+        sink.set(item);
+        try
+        {
+          if (item.error==null && item.src.created())
+            item.passed = test.test(w,item.name,item.src);
+        }
+        catch (Throwable e)
+        { item.error = e; }
+        sink.remove();
+        item.src = null;
+        item.finish();
+      }
+    }
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Item: file to test and results of the test.
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+  private static class Item
+  {
+    int index;
+    String name;
+    Source src;
+    ByteArrayOutputStream[] buffers;  // Output for each stream
+    boolean passed = false;
+    Throwable error = null;
+    boolean done = false;
+
+    Item(int index, String name, int n)
+      {
+        this.index = index;
+        this.name = name;
+        buffers = new ByteArrayOutputStream[n];
+        for (int i=0;i<n;i++)
+          buffers[i] = new ByteArrayOutputStream();
+      }
+
+    synchronized void finish()
+      {
+        done = true;
+        notifyAll();
+      }
+
+    synchronized void await()
+      {
+        try
+        { while (!done) wait(); }
+        catch (InterruptedException e)
+        { throw new Error(e); }
+      }
+  }
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Router: output stream number 'i'.
+  //  Sends output to the current file of the writing thread,
+  //  or directly to the stream if there is none.
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+  private class Router extends OutputStream
+  {
+    int i;
+
+    Router(int i)
+      { this.i = i; }
+
+    OutputStream target()
+      {
+        Item item = sink.get();
+        if (item==null) return streams.elementAt(i);
+        return item.buffers[i];
+      }
+
+    public void write(int b) throws IOException
+      { target().write(b); }
+
+    public void write(byte[] b, int off, int len) throws IOException
+      { target().write(b,off,len); }
+  }
+}
@@ -0,0 +1,67 @@
+//=========================================================================
+//
+//  Part of PEG parser generator Mouse.
+//
+//  Copyright (C) 2021 by Roman R. Redziejowski (www.romanredz.se).
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+//=========================================================================
+
+import mouse.runtime.SourceBytes;
+import mouse.runtime.SourceString;
+import java.nio.charset.StandardCharsets;
+
+//  Check the documented difference between parsers generated
+//  from grammar.txt without option -B (CharParser) and with it
+//  (ByteParser) for a character beyond U+FFFF. CharParser sees it
+//  as two characters (surrogates), ByteParser as one character
+//  that is not in any character class. String literals match
+//  in both. Run by target 'test' of build.xml.
+
+class Utf8
+{
+  static final String c = "\ud834\udd1e"; // U+1D11E
+
+  //  Input, expected result of CharParser and of ByteParser.
+  static final Object[][] cases =
+    {
+      {"1" + c,      false, true },               // _ !_
+      {"2" + c,      true,  false},               // _ _ !_
+      {"3" + c,      true,  true },               // literal
+      {"4" + c,      false, false},               // class
+      {"1\u00e9",    true,  true },               // U+00E9 is one character
+      {"2\u00e9",    false, false}
+    };
+
+  public static void main(String argv[])
+    {
+      CharParser cp = new CharParser();
+      ByteParser bp = new ByteParser();
+      boolean ok = true;
+      for (Object[] k: cases)
+      {
+        String s = (String)k[0];
+        boolean rc = cp.parse(new SourceString(s));
+        boolean rb = bp.parse(new SourceBytes(s.getBytes(StandardCharsets.UTF_8)));
+        if (rc!=(Boolean)k[1] || rb!=(Boolean)k[2])
+        {
+          System.out.println("wrong result for input starting with '" + s.charAt(0)
+                             + "': " + rc + " without -B, " + rb + " with -B");
+          ok = false;
+        }
+      }
+      System.out.println(ok? "utf8: as documented" : "utf8: not as documented");
+      if (!ok) System.exit(1);
+    }
+}